@@ -0,0 +1,84 @@
+package com.namedloot;
+
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.render.VertexConsumerProvider;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * Collects the detail background boxes of every label in a frame and emits
+ * them together, one buffer per render layer, so drawing them does not
+ * interleave background and text buffers in the shared entity consumers.
+ * Only used from the render thread.
+ */
+final class BackgroundBatch {
+    private final QuadList normal = new QuadList();
+    private final QuadList seeThrough = new QuadList();
+    private final Vector3f scratch = new Vector3f();
+
+    /**
+     * Queues a quad in label space, transformed by {@code matrix} right away
+     * so the caller's matrix can be reused.
+     */
+    void add(Matrix4f matrix, float x1, float y1, float x2, float y2, int color, boolean useSeeThrough) {
+        QuadList quads = useSeeThrough ? seeThrough : normal;
+        quads.ensureCapacity();
+
+        int offset = quads.size * 12;
+        putVertex(quads.positions, offset, matrix, x1, y2);
+        putVertex(quads.positions, offset + 3, matrix, x2, y2);
+        putVertex(quads.positions, offset + 6, matrix, x2, y1);
+        putVertex(quads.positions, offset + 9, matrix, x1, y1);
+        quads.colors[quads.size++] = color;
+    }
+
+    /**
+     * Emits every queued quad and clears the batch.
+     */
+    void flush(VertexConsumerProvider provider) {
+        // Select the appropriate RenderLayer based on the useSeeThrough setting
+        emit(provider, RenderLayer.getTextBackground(), normal);
+        emit(provider, RenderLayer.getTextBackgroundSeeThrough(), seeThrough);
+    }
+
+    private void putVertex(float[] positions, int offset, Matrix4f matrix, float x, float y) {
+        matrix.transformPosition(x, y, -1, scratch);
+        positions[offset] = scratch.x;
+        positions[offset + 1] = scratch.y;
+        positions[offset + 2] = scratch.z;
+    }
+
+    private static void emit(VertexConsumerProvider provider, RenderLayer layer, QuadList quads) {
+        if (quads.size == 0) {
+            return;
+        }
+
+        VertexConsumer buffer = provider.getBuffer(layer);
+        float[] positions = quads.positions;
+        for (int quad = 0; quad < quads.size; quad++) {
+            int color = quads.colors[quad]; // Use alpha from the color
+            for (int vertex = quad * 12, end = vertex + 12; vertex < end; vertex += 3) {
+                buffer.vertex(positions[vertex], positions[vertex + 1], positions[vertex + 2])
+                        .color(color)
+                        .light(0xF000F0); // Add light like text
+            }
+        }
+        quads.size = 0;
+    }
+
+    private static final class QuadList {
+        float[] positions = new float[16 * 12];
+        int[] colors = new int[16];
+        int size;
+
+        void ensureCapacity() {
+            if (size == colors.length) {
+                colors = Arrays.copyOf(colors, size * 2);
+                positions = Arrays.copyOf(positions, size * 2 * 12);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.namedloot;
+
+import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
+
+import java.util.Locale;
+
+/**
+ * Optional HUD panel with NamedLoot's own per-frame numbers, so a stutter can
+ * be told apart from other mods. Toggled with the "Performance Overlay"
+ * option.
+ */
+public class DebugOverlay {
+    private static final int LINE_HEIGHT = 10;
+    private static final int MARGIN = 4;
+
+    public static void registerEvents() {
+        HudRenderCallback.EVENT.register((context, tickCounter) -> {
+            MinecraftClient client = MinecraftClient.getInstance();
+            if (!NamedLootStats.isEnabled() || client.world == null || client.options.hudHidden) {
+                return;
+            }
+            render(context, client.textRenderer);
+        });
+    }
+
+    private static void render(DrawContext context, TextRenderer textRenderer) {
+        LabelCache.Stats cache = WorldRenderEventHandler.getLabelCacheStats();
+        long allocated = NamedLootStats.getAllocatedBytes();
+
+        String[] lines = {
+                "NamedLoot",
+                String.format(Locale.ROOT, "Candidates: %d  Culled: %d  Drawn: %d",
+                        NamedLootStats.getCandidates(), NamedLootStats.getCulled(), NamedLootStats.getDrawn()),
+                String.format(Locale.ROOT, "Rule evaluations: %d  Build: %.2f ms",
+                        NamedLootStats.getRuleEvaluations(), NamedLootStats.getBuildNanos() / 1_000_000.0),
+                String.format(Locale.ROOT, "Raycasts: hover %d  occlusion %d",
+                        NamedLootStats.getHoverRaycasts(), NamedLootStats.getOcclusionRaycasts()),
+                String.format(Locale.ROOT, "Render: p50 %.3f ms  p99 %.3f ms",
+                        NamedLootStats.getFramePercentile(50) / 1_000_000.0,
+                        NamedLootStats.getFramePercentile(99) / 1_000_000.0),
+                allocated >= 0
+                        ? String.format(Locale.ROOT, "Allocated: %.1f KB", allocated / 1024.0)
+                        : "Allocated: n/a",
+                String.format(Locale.ROOT, "Label cache: %d/%d  hits %d  misses %d  evictions %d",
+                        cache.size(), cache.capacity(), cache.hits(), cache.misses(), cache.evictions())
+        };
+
+        // Top right, away from the chat and the hotbar
+        int right = context.getScaledWindowWidth() - MARGIN;
+        int y = MARGIN;
+        for (String line : lines) {
+            int width = textRenderer.getWidth(line);
+            context.fill(right - width - 2, y - 1, right + 2, y + LINE_HEIGHT - 1, 0x90505050);
+            context.drawTextWithShadow(textRenderer, line, right - width, y, 0xFFFFFF);
+            y += LINE_HEIGHT;
+        }
+    }
+}
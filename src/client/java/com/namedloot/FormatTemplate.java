@@ -0,0 +1,207 @@
+package com.namedloot;
+
+import com.namedloot.config.NamedLootConfig;
+import net.minecraft.item.ItemStack;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Style;
+import net.minecraft.text.Text;
+import net.minecraft.text.TextColor;
+import net.minecraft.util.Formatting;
+import net.minecraft.util.Rarity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A label format string parsed once into pre-styled literal segments and
+ * {@code {name}}/{@code {count}} slots. Instantiating a template only fills in
+ * the slots, it never rescans the format string.
+ */
+public final class FormatTemplate {
+    private enum Kind {
+        LITERAL,
+        // {name} in a manual format: keeps item colors unless overridden, else uses the & style
+        MANUAL_NAME,
+        // {name} in automatic mode: keeps item colors unless overridden, else uses the configured name style
+        AUTOMATIC_NAME,
+        COUNT
+    }
+
+    private record Segment(Kind kind, Text literal, Style style) {
+    }
+
+    private final Segment[] segments;
+    private final boolean overrideItemColors;
+
+    private FormatTemplate(List<Segment> segments, boolean overrideItemColors) {
+        this.segments = segments.toArray(new Segment[0]);
+        this.overrideItemColors = overrideItemColors;
+    }
+
+    /**
+     * Compiles a manual format with {@code &} color and style codes.
+     */
+    public static FormatTemplate manual(String format, boolean overrideItemColors) {
+        List<Segment> segments = new ArrayList<>();
+        Style currentStyle = Style.EMPTY;
+        StringBuilder currentSegment = new StringBuilder();
+
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+
+            // Handle ampersand formatting codes
+            if (c == '&' && i + 1 < format.length()) {
+                addLiteral(segments, currentSegment, currentStyle);
+                currentStyle = applyFormatCode(currentStyle, format.charAt(++i));
+                continue;
+            }
+
+            // Check for placeholder start
+            if (c == '{') {
+                if (format.startsWith("{name}", i)) {
+                    addLiteral(segments, currentSegment, currentStyle);
+                    segments.add(new Segment(Kind.MANUAL_NAME, null, currentStyle));
+                    i += "{name}".length() - 1;
+                    continue;
+                } else if (format.startsWith("{count}", i)) {
+                    addLiteral(segments, currentSegment, currentStyle);
+                    segments.add(new Segment(Kind.COUNT, null, currentStyle));
+                    i += "{count}".length() - 1;
+                    continue;
+                }
+            }
+
+            currentSegment.append(c);
+        }
+
+        // Add remaining text
+        addLiteral(segments, currentSegment, currentStyle);
+
+        return new FormatTemplate(segments, overrideItemColors);
+    }
+
+    /**
+     * Compiles a format for automatic styling: literal text is left unstyled and
+     * the placeholders use the name and count styles from the config.
+     */
+    public static FormatTemplate automatic(String format, NamedLootConfig config) {
+        Style nameStyle = Style.EMPTY.withColor(toRgb(config.nameRed, config.nameGreen, config.nameBlue));
+        if (config.nameBold) nameStyle = nameStyle.withBold(true);
+        if (config.nameItalic) nameStyle = nameStyle.withItalic(true);
+        if (config.nameUnderline) nameStyle = nameStyle.withUnderline(true);
+        if (config.nameStrikethrough) nameStyle = nameStyle.withStrikethrough(true);
+
+        Style countStyle = Style.EMPTY.withColor(toRgb(config.countRed, config.countGreen, config.countBlue));
+        if (config.countBold) countStyle = countStyle.withBold(true);
+        if (config.countItalic) countStyle = countStyle.withItalic(true);
+        if (config.countUnderline) countStyle = countStyle.withUnderline(true);
+        if (config.countStrikethrough) countStyle = countStyle.withStrikethrough(true);
+
+        List<Segment> segments = new ArrayList<>();
+        int currentIndex = 0;
+        while (currentIndex < format.length()) {
+            int nameIndex = format.indexOf("{name}", currentIndex);
+            int countIndex = format.indexOf("{count}", currentIndex);
+
+            // Determine the nearest placeholder
+            boolean nameFirst = nameIndex != -1 && (countIndex == -1 || nameIndex < countIndex);
+            int nextPlaceholderIndex = nameFirst ? nameIndex : countIndex;
+
+            // If there are no more placeholders, add the remaining literal text
+            if (nextPlaceholderIndex == -1) {
+                segments.add(new Segment(Kind.LITERAL, Text.literal(format.substring(currentIndex)), Style.EMPTY));
+                break;
+            }
+
+            // Add literal text before placeholder
+            if (nextPlaceholderIndex > currentIndex) {
+                segments.add(new Segment(Kind.LITERAL,
+                        Text.literal(format.substring(currentIndex, nextPlaceholderIndex)), Style.EMPTY));
+            }
+
+            if (nameFirst) {
+                segments.add(new Segment(Kind.AUTOMATIC_NAME, null, nameStyle));
+                currentIndex = nextPlaceholderIndex + "{name}".length();
+            } else {
+                segments.add(new Segment(Kind.COUNT, null, countStyle));
+                currentIndex = nextPlaceholderIndex + "{count}".length();
+            }
+        }
+
+        return new FormatTemplate(segments, config.overrideItemColors);
+    }
+
+    public MutableText instantiate(ItemStack itemStack, String countText) {
+        MutableText result = Text.literal("");
+
+        for (Segment segment : segments) {
+            switch (segment.kind) {
+                case LITERAL -> result.append(segment.literal);
+                case COUNT -> result.append(Text.literal(countText).setStyle(segment.style));
+                case MANUAL_NAME -> {
+                    if (!overrideItemColors &&
+                            (itemStack.getName().getStyle().getColor() != null ||
+                                    !itemStack.getRarity().equals(Rarity.COMMON))) {
+                        result.append(itemStack.getFormattedName().copy());
+                    } else {
+                        result.append(Text.literal(itemStack.getName().getString()).setStyle(segment.style));
+                    }
+                }
+                case AUTOMATIC_NAME -> {
+                    TextColor existingColor = itemStack.getName().getStyle().getColor();
+                    boolean isCommon = itemStack.getRarity().equals(Rarity.COMMON);
+
+                    // If the item name has a built-in color (not null/white) OR rarity is NOT COMMON,
+                    // keep getFormattedName (maintaining built-in color and style)
+                    if (!overrideItemColors &&
+                            (existingColor != null && existingColor != TextColor.fromFormatting(Formatting.WHITE) || !isCommon)) {
+                        result.append(itemStack.getFormattedName());
+                    } else {
+                        result.append(Text.literal(itemStack.getName().getString()).setStyle(segment.style));
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static void addLiteral(List<Segment> segments, StringBuilder currentSegment, Style style) {
+        if (!currentSegment.isEmpty()) {
+            segments.add(new Segment(Kind.LITERAL, Text.literal(currentSegment.toString()).setStyle(style), style));
+            currentSegment.setLength(0);
+        }
+    }
+
+    private static int toRgb(float red, float green, float blue) {
+        return ((int) (red * 255) << 16) | ((int) (green * 255) << 8) | (int) (blue * 255);
+    }
+
+    private static Style applyFormatCode(Style currentStyle, char code) {
+        return switch (code) {
+            case '0' -> currentStyle.withColor(TextColor.fromRgb(0x000000));
+            case '1' -> currentStyle.withColor(TextColor.fromRgb(0x0000AA));
+            case '2' -> currentStyle.withColor(TextColor.fromRgb(0x00AA00));
+            case '3' -> currentStyle.withColor(TextColor.fromRgb(0x00AAAA));
+            case '4' -> currentStyle.withColor(TextColor.fromRgb(0xAA0000));
+            case '5' -> currentStyle.withColor(TextColor.fromRgb(0xAA00AA));
+            case '6' -> currentStyle.withColor(TextColor.fromRgb(0xFFAA00));
+            case '7' -> currentStyle.withColor(TextColor.fromRgb(0xAAAAAA));
+            case '8' -> currentStyle.withColor(TextColor.fromRgb(0x555555));
+            case '9' -> currentStyle.withColor(TextColor.fromRgb(0x5555FF));
+            case 'a' -> currentStyle.withColor(TextColor.fromRgb(0x55FF55));
+            case 'b' -> currentStyle.withColor(TextColor.fromRgb(0x55FFFF));
+            case 'c' -> currentStyle.withColor(TextColor.fromRgb(0xFF5555));
+            case 'd' -> currentStyle.withColor(TextColor.fromRgb(0xFF55FF));
+            case 'e' -> currentStyle.withColor(TextColor.fromRgb(0xFFFF55));
+            case 'f' -> currentStyle.withColor(TextColor.fromRgb(0xFFFFFF));
+            case 'k' -> currentStyle.withObfuscated(true);
+            case 'l' -> currentStyle.withBold(true);
+            case 'm' -> currentStyle.withStrikethrough(true);
+            case 'n' -> currentStyle.withUnderline(true);
+            case 'o' -> currentStyle.withItalic(true);
+            case 'r' -> Style.EMPTY;
+            default -> currentStyle;
+        };
+    }
+}
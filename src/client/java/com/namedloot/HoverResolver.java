@@ -0,0 +1,105 @@
+package com.namedloot;
+
+import com.namedloot.jfr.HoverResolveEvent;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.util.hit.BlockHitResult;
+import net.minecraft.util.hit.HitResult;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.RaycastContext;
+
+import java.util.Optional;
+
+/**
+ * Resolves the item entity the player is looking at, once per tick, for
+ * every hover consumer (name-on-hover filtering and details-on-hover).
+ * <p>
+ * A single look ray is tested against the items in the grid cells along it,
+ * the nearest hit wins, and only that one is checked for block occlusion.
+ */
+public class HoverResolver {
+    // Scratch state for the broad-phase callback
+    private static Vec3d rayStart;
+    private static Vec3d rayEnd;
+    private static ItemEntity nearestHit;
+    private static double nearestHitDistance;
+    private static int testedCount;
+
+    /**
+     * Casts the look ray and returns the nearest unobstructed item hit, or {@code null}.
+     */
+    public static ItemEntity resolve(MinecraftClient client, double reachDistance) {
+        if (client.player == null || client.world == null) {
+            return null;
+        }
+
+        HoverResolveEvent event = new HoverResolveEvent();
+        event.begin();
+        ItemEntity result = castLookRay(client, reachDistance);
+        if (event.shouldCommit()) {
+            event.tested = testedCount;
+            event.hit = result != null;
+            event.commit();
+        }
+        return result;
+    }
+
+    private static ItemEntity castLookRay(MinecraftClient client, double reachDistance) {
+        // Get player's look vector
+        rayStart = client.player.getEyePos();
+        rayEnd = rayStart.add(client.player.getRotationVec(1.0F).multiply(reachDistance));
+        nearestHit = null;
+        nearestHitDistance = Double.MAX_VALUE;
+        testedCount = 0;
+
+        ItemEntityTracker.forEachNearRay(client.world, rayStart, rayEnd, HoverResolver::testEntity);
+        NamedLootStats.hoverRaycasts++;
+
+        ItemEntity candidate = nearestHit;
+        rayStart = null;
+        rayEnd = null;
+        nearestHit = null;
+        if (candidate == null) {
+            return null;
+        }
+
+        // Check if there are blocks in the way, using the entity position as the end point
+        NamedLootStats.hoverRaycasts++;
+        Vec3d playerPos = client.player.getEyePos();
+        Vec3d entityPos = candidate.getPos();
+        BlockHitResult blockHitResult = client.world.raycast(
+                new RaycastContext(
+                        playerPos,
+                        entityPos,
+                        RaycastContext.ShapeType.COLLIDER,
+                        RaycastContext.FluidHandling.NONE,
+                        client.player
+                )
+        );
+
+        // If block is closer than entity, the view is obstructed
+        if (blockHitResult.getType() != HitResult.Type.MISS
+                && blockHitResult.getPos().squaredDistanceTo(playerPos) < entityPos.squaredDistanceTo(playerPos)) {
+            return null;
+        }
+
+        return candidate;
+    }
+
+    private static void testEntity(ItemEntity entity) {
+        testedCount++;
+        if (entity.isRemoved()) {
+            return;
+        }
+
+        // Check if the ray intersects with the entity's (slightly enlarged) bounding box
+        Optional<Vec3d> hit = entity.getBoundingBox().expand(0.5).raycast(rayStart, rayEnd);
+        if (hit.isPresent()) {
+            double distance = hit.get().squaredDistanceTo(rayStart);
+            if (distance < nearestHitDistance) {
+                nearestHitDistance = distance;
+                nearestHit = entity;
+            }
+        }
+    }
+}
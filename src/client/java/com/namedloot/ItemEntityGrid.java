@@ -0,0 +1,212 @@
+package com.namedloot;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.function.Consumer;
+
+/**
+ * Uniform grid of item entity positions with 8-block cells. Range and ray
+ * queries only look at the cells they overlap instead of every tracked item.
+ */
+public final class ItemEntityGrid {
+    private static final int CELL_SHIFT = 3;
+    private static final int CELL_SIZE = 1 << CELL_SHIFT;
+
+    private final Long2ObjectOpenHashMap<ObjectArrayList<ItemEntity>> cells = new Long2ObjectOpenHashMap<>();
+    private final Reference2LongOpenHashMap<ItemEntity> cellOf = new Reference2LongOpenHashMap<>();
+
+    // Reused by ray queries to visit each cell once
+    private final LongOpenHashSet visitedCells = new LongOpenHashSet();
+
+    public void add(ItemEntity entity) {
+        long key = cellKey(entity.getX(), entity.getY(), entity.getZ());
+        if (cellOf.containsKey(entity)) {
+            move(entity, key);
+            return;
+        }
+        cellOf.put(entity, key);
+        addToCell(entity, key);
+    }
+
+    public void remove(ItemEntity entity) {
+        if (!cellOf.containsKey(entity)) {
+            return;
+        }
+        removeFromCell(entity, cellOf.removeLong(entity));
+    }
+
+    /**
+     * Moves the entity to a new cell if it has crossed a cell border since the last update.
+     */
+    public void update(ItemEntity entity) {
+        if (cellOf.containsKey(entity)) {
+            move(entity, cellKey(entity.getX(), entity.getY(), entity.getZ()));
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        cellOf.clear();
+    }
+
+    /**
+     * Visits every entity whose position lies within {@code radius} of {@code center}.
+     */
+    public void forEachInSphere(Vec3d center, double radius, Consumer<ItemEntity> consumer) {
+        double radiusSquared = radius * radius;
+        int minX = toCell(center.x - radius), maxX = toCell(center.x + radius);
+        int minY = toCell(center.y - radius), maxY = toCell(center.y + radius);
+        int minZ = toCell(center.z - radius), maxZ = toCell(center.z + radius);
+
+        long cellsInRange = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        if (cellsInRange > cells.size()) {
+            // Sparse grid: cheaper to walk the occupied cells than to probe every cell in range
+            for (Long2ObjectMap.Entry<ObjectArrayList<ItemEntity>> entry : cells.long2ObjectEntrySet()) {
+                long key = entry.getLongKey();
+                int x = BlockPos.unpackLongX(key), y = BlockPos.unpackLongY(key), z = BlockPos.unpackLongZ(key);
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ) {
+                    acceptInSphere(entry.getValue(), center, radiusSquared, consumer);
+                }
+            }
+            return;
+        }
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    ObjectArrayList<ItemEntity> cell = cells.get(BlockPos.asLong(x, y, z));
+                    if (cell != null) {
+                        acceptInSphere(cell, center, radiusSquared, consumer);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits every entity in the cells crossed by the segment from {@code start}
+     * to {@code end}, plus their direct neighbours so that entities whose
+     * (expanded) hitbox pokes into the ray from an adjacent cell are not missed.
+     * Callers still do the exact hit test.
+     */
+    public void forEachNearRay(Vec3d start, Vec3d end, Consumer<ItemEntity> consumer) {
+        visitedCells.clear();
+
+        int x = toCell(start.x), y = toCell(start.y), z = toCell(start.z);
+        int endX = toCell(end.x), endY = toCell(end.y), endZ = toCell(end.z);
+
+        double dx = end.x - start.x, dy = end.y - start.y, dz = end.z - start.z;
+        int stepX = Integer.signum(endX - x), stepY = Integer.signum(endY - y), stepZ = Integer.signum(endZ - z);
+
+        // Amanatides-Woo traversal, t runs from 0 at start to 1 at end
+        double tDeltaX = stepX != 0 ? CELL_SIZE / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = stepY != 0 ? CELL_SIZE / Math.abs(dy) : Double.POSITIVE_INFINITY;
+        double tDeltaZ = stepZ != 0 ? CELL_SIZE / Math.abs(dz) : Double.POSITIVE_INFINITY;
+        double tMaxX = stepX != 0 ? (((stepX > 0 ? x + 1 : x) << CELL_SHIFT) - start.x) / dx : Double.POSITIVE_INFINITY;
+        double tMaxY = stepY != 0 ? (((stepY > 0 ? y + 1 : y) << CELL_SHIFT) - start.y) / dy : Double.POSITIVE_INFINITY;
+        double tMaxZ = stepZ != 0 ? (((stepZ > 0 ? z + 1 : z) << CELL_SHIFT) - start.z) / dz : Double.POSITIVE_INFINITY;
+
+        int remaining = Math.abs(endX - x) + Math.abs(endY - y) + Math.abs(endZ - z);
+        while (true) {
+            visitNeighbourhood(x, y, z, consumer);
+            if (remaining-- <= 0) {
+                break;
+            }
+
+            if (tMaxX <= tMaxY && tMaxX <= tMaxZ) {
+                x += stepX;
+                tMaxX += tDeltaX;
+            } else if (tMaxY <= tMaxZ) {
+                y += stepY;
+                tMaxY += tDeltaY;
+            } else {
+                z += stepZ;
+                tMaxZ += tDeltaZ;
+            }
+        }
+    }
+
+    public int size() {
+        return cellOf.size();
+    }
+
+    private void visitNeighbourhood(int cellX, int cellY, int cellZ, Consumer<ItemEntity> consumer) {
+        for (int x = cellX - 1; x <= cellX + 1; x++) {
+            for (int y = cellY - 1; y <= cellY + 1; y++) {
+                for (int z = cellZ - 1; z <= cellZ + 1; z++) {
+                    long key = BlockPos.asLong(x, y, z);
+                    if (!visitedCells.add(key)) {
+                        continue;
+                    }
+                    ObjectArrayList<ItemEntity> cell = cells.get(key);
+                    if (cell != null) {
+                        for (int i = 0, size = cell.size(); i < size; i++) {
+                            consumer.accept(cell.get(i));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void acceptInSphere(ObjectArrayList<ItemEntity> cell, Vec3d center, double radiusSquared,
+                                       Consumer<ItemEntity> consumer) {
+        for (int i = 0, size = cell.size(); i < size; i++) {
+            ItemEntity entity = cell.get(i);
+            if (entity.squaredDistanceTo(center) <= radiusSquared) {
+                consumer.accept(entity);
+            }
+        }
+    }
+
+    private void move(ItemEntity entity, long newKey) {
+        long oldKey = cellOf.getLong(entity);
+        if (oldKey == newKey) {
+            return;
+        }
+        removeFromCell(entity, oldKey);
+        cellOf.put(entity, newKey);
+        addToCell(entity, newKey);
+    }
+
+    private void addToCell(ItemEntity entity, long key) {
+        ObjectArrayList<ItemEntity> cell = cells.get(key);
+        if (cell == null) {
+            cell = new ObjectArrayList<>();
+            cells.put(key, cell);
+        }
+        cell.add(entity);
+    }
+
+    private void removeFromCell(ItemEntity entity, long key) {
+        ObjectArrayList<ItemEntity> cell = cells.get(key);
+        if (cell == null) {
+            return;
+        }
+        // Order inside a cell does not matter, so swap-remove
+        int index = cell.indexOf(entity);
+        if (index >= 0) {
+            cell.set(index, cell.get(cell.size() - 1));
+            cell.remove(cell.size() - 1);
+        }
+        if (cell.isEmpty()) {
+            cells.remove(key);
+        }
+    }
+
+    private static int toCell(double coordinate) {
+        return MathHelper.floor(coordinate) >> CELL_SHIFT;
+    }
+
+    private static long cellKey(double x, double y, double z) {
+        return BlockPos.asLong(toCell(x), toCell(y), toCell(z));
+    }
+}
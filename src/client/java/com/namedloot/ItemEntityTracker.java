@@ -0,0 +1,88 @@
+package com.namedloot;
+
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientEntityEvents;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a live set of the item entities loaded in the client world, so the
+ * renderer does not have to walk entity sections every frame to find them.
+ * The same entities are indexed in an {@link ItemEntityGrid} for range and
+ * ray queries.
+ */
+public class ItemEntityTracker {
+    private static final Set<ItemEntity> TRACKED = new ReferenceOpenHashSet<>();
+    private static final Set<ItemEntity> TRACKED_VIEW = Collections.unmodifiableSet(TRACKED);
+    private static final ItemEntityGrid GRID = new ItemEntityGrid();
+
+    private static ClientWorld trackedWorld;
+
+    public static void registerEvents() {
+        ClientEntityEvents.ENTITY_LOAD.register((entity, world) -> {
+            if (entity instanceof ItemEntity itemEntity) {
+                syncWorld(world);
+                TRACKED.add(itemEntity);
+                GRID.add(itemEntity);
+            }
+        });
+
+        ClientEntityEvents.ENTITY_UNLOAD.register((entity, world) -> {
+            if (entity instanceof ItemEntity itemEntity && world == trackedWorld) {
+                TRACKED.remove(itemEntity);
+                GRID.remove(itemEntity);
+            }
+        });
+
+        // Items only move during the world tick, so re-bucketing once per tick keeps the grid exact for rendering
+        ClientTickEvents.END_CLIENT_TICK.register(client -> {
+            for (ItemEntity entity : TRACKED) {
+                GRID.update(entity);
+            }
+        });
+
+        // Nothing survives leaving the server
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> syncWorld(null));
+    }
+
+    /**
+     * Returns the tracked item entities of the given world. Switching worlds
+     * (dimension change, rejoin) drops everything tracked for the old one.
+     */
+    public static Set<ItemEntity> getTrackedEntities(ClientWorld world) {
+        syncWorld(world);
+        return TRACKED_VIEW;
+    }
+
+    /**
+     * Visits the tracked item entities within {@code radius} of {@code center}.
+     */
+    public static void forEachInRange(ClientWorld world, Vec3d center, double radius, Consumer<ItemEntity> consumer) {
+        syncWorld(world);
+        GRID.forEachInSphere(center, radius, consumer);
+    }
+
+    /**
+     * Visits the tracked item entities in the grid cells around the segment
+     * from {@code start} to {@code end}. This is a broad phase only.
+     */
+    public static void forEachNearRay(ClientWorld world, Vec3d start, Vec3d end, Consumer<ItemEntity> consumer) {
+        syncWorld(world);
+        GRID.forEachNearRay(start, end, consumer);
+    }
+
+    private static void syncWorld(ClientWorld world) {
+        if (world != trackedWorld) {
+            TRACKED.clear();
+            GRID.clear();
+            trackedWorld = world;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.namedloot;
+
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.text.OrderedText;
+import net.minecraft.text.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fully formatted name tag for one kind of item stack, including its detail
+ * lines (enchantments). Instances are shared between every dropped stack with
+ * the same item, components and count.
+ */
+public final class ItemLabel {
+    // Used when nothing should be rendered (mod disabled and no advanced rule matched)
+    public static final ItemLabel HIDDEN = new ItemLabel(Text.empty(), List.of(), false);
+
+    private final Text text;
+    private final OrderedText orderedText;
+    private final List<OrderedText> details;
+    private final boolean fromAdvancedRule;
+
+    // Measured lazily on the render thread, -1 until then
+    private int width = -1;
+    private int detailsMaxWidth = -1;
+
+    public ItemLabel(Text text, List<Text> details, boolean fromAdvancedRule) {
+        this.text = text;
+        this.orderedText = text.asOrderedText();
+        this.fromAdvancedRule = fromAdvancedRule;
+
+        List<OrderedText> orderedDetails = new ArrayList<>(details.size());
+        for (Text detail : details) {
+            orderedDetails.add(detail.asOrderedText());
+        }
+        this.details = List.copyOf(orderedDetails);
+    }
+
+    public Text getText() {
+        return text;
+    }
+
+    public OrderedText getOrderedText() {
+        return orderedText;
+    }
+
+    public List<OrderedText> getDetails() {
+        return details;
+    }
+
+    public boolean isFromAdvancedRule() {
+        return fromAdvancedRule;
+    }
+
+    public int getWidth(TextRenderer textRenderer) {
+        if (width < 0) {
+            width = textRenderer.getWidth(orderedText);
+        }
+        return width;
+    }
+
+    /**
+     * Width of the widest detail line, used to size the detail background box.
+     */
+    public int getDetailsMaxWidth(TextRenderer textRenderer) {
+        if (detailsMaxWidth < 0) {
+            int maxWidth = 0;
+            for (OrderedText detail : details) {
+                maxWidth = Math.max(maxWidth, textRenderer.getWidth(detail));
+            }
+            detailsMaxWidth = maxWidth;
+        }
+        return detailsMaxWidth;
+    }
+}
@@ -0,0 +1,91 @@
+package com.namedloot;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.List;
+
+/**
+ * Picks the nearest labels to draw when there are more candidates than the
+ * per-frame budget, and orders them back-to-front for correct blending.
+ * <p>
+ * Squared distances are computed once per candidate, the nearest ones are
+ * partitioned out with quickselect and only those are sorted. Buffers are
+ * reused between frames, so this must only be used from the render thread.
+ */
+final class LabelBudget {
+    private double[] distances = new double[64];
+    private int[] order = new int[64];
+    private int selected;
+
+    /**
+     * Selects at most {@code budget} candidates (all of them if {@code budget <= 0}).
+     *
+     * @return the number of selected candidates
+     */
+    int select(List<? extends Entity> candidates, Vec3d cameraPos, int budget) {
+        int size = candidates.size();
+        if (distances.length < size) {
+            int capacity = Math.max(size, distances.length * 2);
+            distances = new double[capacity];
+            order = new int[capacity];
+        }
+
+        for (int i = 0; i < size; i++) {
+            distances[i] = candidates.get(i).squaredDistanceTo(cameraPos);
+            order[i] = i;
+        }
+
+        selected = size;
+        if (budget > 0 && size > budget) {
+            // Move the nearest `budget` candidates to the front, in no particular order
+            quickSelect(0, size - 1, budget);
+            selected = budget;
+        }
+
+        // Farthest first, so nearer labels are drawn over farther ones
+        final double[] d = distances;
+        IntArrays.quickSort(order, 0, selected, (a, b) -> Double.compare(d[b], d[a]));
+        return selected;
+    }
+
+    /**
+     * Index into the candidate list of the {@code i}-th label to draw.
+     */
+    int get(int i) {
+        return order[i];
+    }
+
+    private void quickSelect(int left, int right, int k) {
+        while (left < right) {
+            int pivotIndex = partition(left, right, left + (right - left) / 2);
+            if (pivotIndex == k - 1) {
+                return;
+            } else if (pivotIndex < k - 1) {
+                left = pivotIndex + 1;
+            } else {
+                right = pivotIndex - 1;
+            }
+        }
+    }
+
+    private int partition(int left, int right, int pivotIndex) {
+        double pivot = distances[order[pivotIndex]];
+        swap(pivotIndex, right);
+        int store = left;
+        for (int i = left; i < right; i++) {
+            if (distances[order[i]] < pivot) {
+                swap(store++, i);
+            }
+        }
+        swap(right, store);
+        return store;
+    }
+
+    private void swap(int a, int b) {
+        int tmp = order[a];
+        order[a] = order[b];
+        order[b] = tmp;
+    }
+}
@@ -0,0 +1,133 @@
+package com.namedloot;
+
+import net.minecraft.component.ComponentChanges;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache of formatted labels. A label only depends on the item, its
+ * components, the stack count and the config, so every dropped stack with the
+ * same key shares one {@link ItemLabel}.
+ * <p>
+ * Not thread-safe, the label worker owns it. Other threads read the
+ * counters through the {@link Stats} published with each snapshot.
+ */
+public final class LabelCache {
+    private final int capacity;
+    private final LinkedHashMap<Key, ItemLabel> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LabelCache(int capacity) {
+        this.capacity = capacity;
+        // Access order turns the LinkedHashMap into an LRU list
+        this.entries = new LinkedHashMap<>(capacity, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ItemLabel> eldest) {
+                if (size() > LabelCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached label for the stack, building it on a miss.
+     *
+     * @param generation the config generation the label is built from
+     */
+    public ItemLabel get(ItemStack stack, int generation, Function<ItemStack, ItemLabel> builder) {
+        Key key = new Key(stack.getItem(), stack.getComponentChanges(), stack.getCount(), generation);
+        ItemLabel label = entries.get(key);
+        if (label != null) {
+            hits++;
+            return label;
+        }
+
+        misses++;
+        label = builder.apply(stack);
+        entries.put(key, label);
+        return label;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * The current counters, to hand to other threads.
+     */
+    public Stats getStats() {
+        return new Stats(entries.size(), capacity, hits, misses, evictions);
+    }
+
+    public record Stats(int size, int capacity, long hits, long misses, long evictions) {
+        public static final Stats EMPTY = new Stats(0, 0, 0, 0, 0);
+    }
+
+    private static final class Key {
+        private final Item item;
+        private final ComponentChanges components;
+        private final int count;
+        private final int generation;
+        private final int hash;
+
+        private Key(Item item, ComponentChanges components, int count, int generation) {
+            this.item = item;
+            this.components = components;
+            this.count = count;
+            this.generation = generation;
+
+            // Hash once, the key is looked up far more often than it is built
+            int h = System.identityHashCode(item);
+            h = 31 * h + components.hashCode();
+            h = 31 * h + count;
+            h = 31 * h + generation;
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key other)) return false;
+            return hash == other.hash
+                    && item == other.item
+                    && count == other.count
+                    && generation == other.generation
+                    && components.equals(other.components);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
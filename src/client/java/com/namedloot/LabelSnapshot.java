@@ -0,0 +1,68 @@
+package com.namedloot;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.text.OrderedText;
+
+import java.util.List;
+
+/**
+ * The labels prepared for the last client tick: which items get a label,
+ * the formatted text and the detail lines to show. Frames only interpolate
+ * and draw these, so rule matching and formatting run at the tick rate
+ * instead of the frame rate.
+ * <p>
+ * Filled by the {@link LabelWorker} and never modified once published,
+ * together with the label cache counters at that point.
+ */
+final class LabelSnapshot {
+    static final LabelSnapshot EMPTY = new LabelSnapshot(0);
+
+    private final ObjectArrayList<ItemEntity> entities;
+    private final ObjectArrayList<ItemLabel> labels;
+    private final ObjectArrayList<List<OrderedText>> details;
+    private LabelCache.Stats cacheStats = LabelCache.Stats.EMPTY;
+
+    LabelSnapshot(int expectedSize) {
+        this.entities = new ObjectArrayList<>(expectedSize);
+        this.labels = new ObjectArrayList<>(expectedSize);
+        this.details = new ObjectArrayList<>(expectedSize);
+    }
+
+    void add(ItemEntity entity, ItemLabel label, List<OrderedText> entityDetails) {
+        entities.add(entity);
+        labels.add(label);
+        details.add(entityDetails);
+    }
+
+    void setCacheStats(LabelCache.Stats cacheStats) {
+        this.cacheStats = cacheStats;
+    }
+
+    LabelCache.Stats getCacheStats() {
+        return cacheStats;
+    }
+
+    int size() {
+        return entities.size();
+    }
+
+    boolean isEmpty() {
+        return entities.isEmpty();
+    }
+
+    ItemEntity getEntity(int i) {
+        return entities.get(i);
+    }
+
+    ItemLabel getLabel(int i) {
+        return labels.get(i);
+    }
+
+    /**
+     * Detail lines to draw under the label, empty when details are hidden.
+     */
+    List<OrderedText> getDetails(int i) {
+        return details.get(i);
+    }
+}
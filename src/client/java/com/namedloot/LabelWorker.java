@@ -0,0 +1,236 @@
+package com.namedloot;
+
+import com.namedloot.jfr.LabelBuildEvent;
+import com.namedloot.rules.RuleProgram;
+import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.minecraft.component.type.ItemEnchantmentsComponent;
+import net.minecraft.enchantment.Enchantment;
+import net.minecraft.enchantment.EnchantmentHelper;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.text.OrderedText;
+import net.minecraft.text.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs rule matching and label formatting on a background thread.
+ * <p>
+ * The client thread hands over a {@link Batch} of candidates each tick, with
+ * copied stacks and the config values the labels depend on. The worker turns
+ * it into a new {@link LabelSnapshot} and publishes it; the render thread
+ * picks up the latest one without ever waiting. If batches arrive faster
+ * than they are built, only the newest one is processed.
+ * <p>
+ * The label cache is only touched by the worker thread. Text widths are not
+ * measured here, the font is only safe to use on the render thread.
+ * <p>
+ * The worker is also the only thread that samples the rule program, see
+ * {@link RuleProgram#sample(ItemStack)}.
+ */
+final class LabelWorker {
+    // One in this many stacks goes through live rule matching to keep the pass rates current
+    private static final int RULE_SAMPLE_INTERVAL = 16;
+
+    private final LabelCache cache = new LabelCache(1024);
+    private final AtomicReference<Batch> pending = new AtomicReference<>();
+    private final AtomicReference<LabelSnapshot> published = new AtomicReference<>(LabelSnapshot.EMPTY);
+    private int sampleCountdown = RULE_SAMPLE_INTERVAL;
+
+    // Bumped by reset(), batches from an older epoch are never published. The lock makes the
+    // check and the publish atomic against a reset, it is never taken by the render thread
+    private final Object publishLock = new Object();
+    private volatile int epoch;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "NamedLoot Label Builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Queues a batch, replacing any batch the worker has not started yet.
+     */
+    void submit(Batch batch) {
+        batch.epoch = epoch;
+        if (pending.getAndSet(batch) == null) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * The most recently built snapshot, never blocks.
+     */
+    LabelSnapshot getLatest() {
+        return published.get();
+    }
+
+    /**
+     * Drops the current snapshot, e.g. when leaving the world. A batch that is
+     * still being built is discarded instead of published.
+     */
+    void reset() {
+        synchronized (publishLock) {
+            epoch++;
+            pending.set(null);
+            published.set(LabelSnapshot.EMPTY);
+        }
+    }
+
+    private void drain() {
+        Batch batch;
+        while ((batch = pending.getAndSet(null)) != null) {
+            if (batch.epoch != epoch) {
+                continue; // Submitted before a reset
+            }
+            try {
+                LabelBuildEvent event = new LabelBuildEvent();
+                event.begin();
+                long start = System.nanoTime();
+                LabelSnapshot snapshot = build(batch);
+                NamedLootStats.recordBuild(batch.ruleEvaluations, System.nanoTime() - start);
+                synchronized (publishLock) {
+                    if (batch.epoch != epoch) {
+                        continue; // Reset while it was being built, it would bring back the old world
+                    }
+                    published.set(snapshot);
+                }
+
+                if (event.shouldCommit()) {
+                    event.candidates = batch.size();
+                    event.rulesEvaluated = batch.ruleEvaluations;
+                    event.labels = snapshot.size();
+                    event.matchTime = batch.matchNanos;
+                    event.formatTime = batch.formatNanos;
+                    event.commit();
+                }
+            } catch (RuntimeException e) {
+                NamedLoot.LOGGER.error("Failed to build item labels", e);
+            }
+        }
+    }
+
+    // Package-private for the benchmarks, which run it on their own thread
+    LabelSnapshot build(Batch batch) {
+        LabelSnapshot snapshot = new LabelSnapshot(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            // Cache hits and the item table skip most condition checks, so sample the
+            // dropped stacks here for the pass rates the rule groups order their conditions by
+            if (--sampleCountdown == 0) {
+                sampleCountdown = RULE_SAMPLE_INTERVAL;
+                batch.program.sample(batch.stacks.get(i));
+            }
+
+            // Formatting only depends on the stack and the config, so identical drops share one label
+            ItemLabel label = cache.get(batch.stacks.get(i), batch.generation, batch::buildLabel);
+            if (label == ItemLabel.HIDDEN) {
+                continue; // If global mod is disabled AND no advanced rule applied, do not render anything.
+            }
+
+            // Check for detail visibility based on hover option and global/rule enablement.
+            // Advanced rules fall back to the global showDetails, otherwise only when the mod is enabled.
+            boolean shouldShowDetails = (label.isFromAdvancedRule() || batch.enabled) && batch.showDetails;
+
+            // If showDetailsOnlyOnHover is enabled, check if the player is looking at this entity
+            if (shouldShowDetails && batch.showDetailsOnlyOnHover) {
+                shouldShowDetails = batch.hovered.getBoolean(i);
+            }
+
+            // Enchantment details are built once with the cached label
+            List<OrderedText> details = shouldShowDetails ? label.getDetails() : List.of();
+            snapshot.add(batch.entities.get(i), label, details);
+        }
+        snapshot.setCacheStats(cache.getStats());
+        return snapshot;
+    }
+
+    /**
+     * Inputs for one snapshot, captured on the client thread. Stacks must be
+     * copies, the worker reads them while the game keeps updating the originals.
+     */
+    static final class Batch {
+        private final RuleProgram program;
+        private final int generation;
+        private final boolean enabled;
+        private final boolean showDetails;
+        private final boolean showDetailsOnlyOnHover;
+
+        private final ObjectArrayList<ItemEntity> entities = new ObjectArrayList<>();
+        private final ObjectArrayList<ItemStack> stacks = new ObjectArrayList<>();
+        private final BooleanArrayList hovered = new BooleanArrayList();
+
+        // The worker's reset epoch when submitted
+        private int epoch;
+
+        // Label cache misses that went through rule matching, and the time split, for the stats
+        private int ruleEvaluations;
+        private long matchNanos;
+        private long formatNanos;
+
+        Batch(RuleProgram program, int generation, boolean enabled, boolean showDetails, boolean showDetailsOnlyOnHover) {
+            this.program = program;
+            this.generation = generation;
+            this.enabled = enabled;
+            this.showDetails = showDetails;
+            this.showDetailsOnlyOnHover = showDetailsOnlyOnHover;
+        }
+
+        void add(ItemEntity entity, ItemStack stackCopy, boolean isHovered) {
+            entities.add(entity);
+            stacks.add(stackCopy);
+            hovered.add(isHovered);
+        }
+
+        int size() {
+            return entities.size();
+        }
+
+        private ItemLabel buildLabel(ItemStack stack) {
+            String countText = String.valueOf(stack.getCount());
+            ruleEvaluations++;
+
+            // 1. First, try to match and apply Advanced Rules (disabled groups are already dropped)
+            long start = System.nanoTime();
+            RuleProgram.Group matchedGroup = program.match(stack);
+            long matched = System.nanoTime();
+            matchNanos += matched - start;
+
+            ItemLabel label;
+            if (matchedGroup != null) {
+                label = new ItemLabel(matchedGroup.getTemplate().instantiate(stack, countText), buildDetails(stack), true);
+            } else if (!enabled) {
+                // 2. If no Advanced Rule was applied, then fall back to Default/Automatic based on global 'enabled' flag
+                return ItemLabel.HIDDEN;
+            } else {
+                // Normal fallback to default/automatic if global mod is enabled
+                label = new ItemLabel(program.getFallbackTemplate().instantiate(stack, countText), buildDetails(stack), false);
+            }
+            formatNanos += System.nanoTime() - matched;
+            return label;
+        }
+
+        private List<Text> buildDetails(ItemStack stack) {
+            // Only attempt to get enchantments if details can be shown
+            if (!showDetails) {
+                return List.of();
+            }
+
+            ItemEnchantmentsComponent enchantments = EnchantmentHelper.getEnchantments(stack);
+            if (enchantments.isEmpty()) {
+                return List.of();
+            }
+
+            List<Text> details = new ArrayList<>(enchantments.getSize());
+            for (RegistryEntry<Enchantment> enchantmentEntry : enchantments.getEnchantments()) {
+                details.add(Enchantment.getName(enchantmentEntry, enchantments.getLevel(enchantmentEntry)));
+            }
+            return details;
+        }
+    }
+}
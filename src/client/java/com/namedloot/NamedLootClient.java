@@ -1,7 +1,15 @@
 package com.namedloot;
 
 import com.namedloot.config.NamedLootConfig;
+import com.namedloot.rules.RuleProgram;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.CommonLifecycleEvents;
+import net.fabricmc.fabric.api.resource.ResourceManagerHelper;
+import net.fabricmc.fabric.api.resource.SimpleSynchronousResourceReloadListener;
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.resource.ResourceType;
+import net.minecraft.util.Identifier;
 
 public class NamedLootClient implements ClientModInitializer {
 	public static NamedLootConfig CONFIG;
@@ -11,9 +19,45 @@ public class NamedLootClient implements ClientModInitializer {
 		// Load config
 		CONFIG = NamedLootConfig.load();
 
-		// Register the world render event handler for AFTER_ENTITIES events
+		// Track item entities as they load and unload instead of querying the world every frame
+		ItemEntityTracker.registerEvents();
+
+		// Raycast a few tracked items per tick to find labels hidden behind blocks
+		OcclusionCache.registerEvents();
+
+		// Register the world render event handler for AFTER_ENTITIES events, after the
+		// tracker so labels are prepared from this tick's item positions
 		WorldRenderEventHandler.registerEvents();
 
+		// Item names depend on the client language, so cached labels must be rebuilt after a resource reload
+		ResourceManagerHelper.get(ResourceType.CLIENT_RESOURCES).registerReloadListener(new SimpleSynchronousResourceReloadListener() {
+			@Override
+			public Identifier getFabricId() {
+				return Identifier.of(NamedLoot.MOD_ID, "labels");
+			}
+
+			@Override
+			public void reload(ResourceManager manager) {
+				CONFIG.markChanged();
+			}
+		});
+
+		// Tag conditions are resolved when rules are compiled, so recompile when the server sends new tags.
+		// Registries are complete by now, so this is also where item ids and tags in rules are checked
+		CommonLifecycleEvents.TAGS_LOADED.register((registries, client) -> {
+			if (client) {
+				RuleProgram.onTagsLoaded();
+				CONFIG.validateRules();
+				CONFIG.markChanged();
+			}
+		});
+
+		// Optional HUD panel with NamedLoot's own performance numbers
+		DebugOverlay.registerEvents();
+
+		// Config saves are debounced on a background thread, write the last one before exiting
+		ClientLifecycleEvents.CLIENT_STOPPING.register(client -> NamedLootConfig.flush());
+
 		// This entrypoint is suitable for setting up client-specific logic, such as rendering.
 		NamedLoot.LOGGER.info("Initializing NamedLoot client features");
 	}
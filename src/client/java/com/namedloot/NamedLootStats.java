@@ -0,0 +1,163 @@
+package com.namedloot;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * NamedLoot's own performance counters, shown by the {@link DebugOverlay}.
+ * <p>
+ * Frame numbers come from the last {@code AFTER_ENTITIES} callback, tick
+ * numbers from the last client tick and build numbers from the last snapshot
+ * the label worker finished, label cache numbers come with that snapshot.
+ * Timing and allocation are only measured while the overlay is on.
+ */
+public final class NamedLootStats {
+    // Callback times over the last few seconds, for the percentiles
+    private static final int WINDOW = 256;
+    private static final long[] FRAME_NANOS = new long[WINDOW];
+    private static final long[] SORTED_NANOS = new long[WINDOW];
+    private static int frameSamples;
+    private static int frameCursor;
+
+    // Looked up when the overlay measures its first frame, so allocation counting is
+    // only switched on while the overlay is shown
+    private static com.sun.management.ThreadMXBean threads;
+    private static boolean threadsResolved;
+    private static boolean allocationCountingEnabledHere;
+
+    // Frame (render thread)
+    static int candidates;
+    static int culled;
+    static int drawn;
+    private static long allocatedBytes = -1;
+    private static long frameStartNanos;
+    private static long frameStartBytes;
+
+    // Tick (client thread)
+    static int hoverRaycasts;
+    static int occlusionRaycasts;
+
+    // Label worker
+    private static volatile int ruleEvaluations;
+    private static volatile long buildNanos;
+
+    private NamedLootStats() {
+    }
+
+    public static boolean isEnabled() {
+        return NamedLootClient.CONFIG.showDebugOverlay;
+    }
+
+    static void beginFrame() {
+        if (!threadsResolved) {
+            threads = getThreadBean();
+            threadsResolved = true;
+        }
+        frameStartNanos = System.nanoTime();
+        frameStartBytes = threads != null ? threads.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    static void endFrame() {
+        long nanos = System.nanoTime() - frameStartNanos;
+        FRAME_NANOS[frameCursor] = nanos;
+        frameCursor = (frameCursor + 1) % WINDOW;
+        frameSamples = Math.min(frameSamples + 1, WINDOW);
+
+        if (threads != null) {
+            allocatedBytes = threads.getCurrentThreadAllocatedBytes() - frameStartBytes;
+        }
+    }
+
+    static void recordBuild(int evaluations, long nanos) {
+        ruleEvaluations = evaluations;
+        buildNanos = nanos;
+    }
+
+    public static int getCandidates() {
+        return candidates;
+    }
+
+    public static int getCulled() {
+        return culled;
+    }
+
+    public static int getDrawn() {
+        return drawn;
+    }
+
+    public static int getHoverRaycasts() {
+        return hoverRaycasts;
+    }
+
+    public static int getOcclusionRaycasts() {
+        return occlusionRaycasts;
+    }
+
+    public static int getRuleEvaluations() {
+        return ruleEvaluations;
+    }
+
+    public static long getBuildNanos() {
+        return buildNanos;
+    }
+
+    /**
+     * Bytes allocated on the render thread during the last callback, or -1
+     * if the JVM can't tell.
+     */
+    public static long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Callback time in nanoseconds at the given percentile (0-100) over the
+     * recent frames, 0 before the first measured frame.
+     */
+    public static long getFramePercentile(int percentile) {
+        if (frameSamples == 0) {
+            return 0;
+        }
+        System.arraycopy(FRAME_NANOS, 0, SORTED_NANOS, 0, frameSamples);
+        Arrays.sort(SORTED_NANOS, 0, frameSamples);
+        int index = (int) Math.ceil(percentile / 100.0 * frameSamples) - 1;
+        return SORTED_NANOS[Math.max(0, Math.min(index, frameSamples - 1))];
+    }
+
+    /**
+     * Forgets the timing window, e.g. when the overlay is turned on again.
+     * When it was turned off, allocation counting is switched back off if
+     * the overlay switched it on.
+     */
+    public static void reset() {
+        frameSamples = 0;
+        frameCursor = 0;
+        allocatedBytes = -1;
+
+        if (!isEnabled() && threadsResolved) {
+            if (allocationCountingEnabledHere) {
+                threads.setThreadAllocatedMemoryEnabled(false);
+                allocationCountingEnabledHere = false;
+            }
+            threads = null;
+            threadsResolved = false;
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean sunBean && sunBean.isThreadAllocatedMemorySupported()) {
+            try {
+                // Leave it on if something else already uses it
+                if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+                    sunBean.setThreadAllocatedMemoryEnabled(true);
+                    allocationCountingEnabledHere = true;
+                }
+                return sunBean;
+            } catch (UnsupportedOperationException | SecurityException e) {
+                NamedLoot.LOGGER.warn("Thread allocation counters are not available", e);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,123 @@
+package com.namedloot;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientEntityEvents;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.BlockView;
+
+/**
+ * Remembers which item labels are hidden behind opaque blocks, so labels that
+ * would only be discarded by the depth test are not formatted or drawn at all.
+ * <p>
+ * Every tick a rotating slice of the items in range gets a block raycast from
+ * the camera to its label, and the result is kept for a limited number of
+ * ticks. Items without a fresh result count as visible. Only consulted when
+ * see-through labels are off.
+ */
+public class OcclusionCache {
+    // Raycasts per tick, spread over the tracked items in turn
+    private static final int RAYCASTS_PER_TICK = 64;
+    // Ticks a result stays valid before the label counts as visible again
+    private static final int TIME_TO_LIVE = 40;
+    // Range checked when the display distance is unlimited, same as the renderer
+    private static final double UNLIMITED_RANGE = 64.0;
+
+    // Expiry tick shifted left by one, lowest bit set when occluded
+    private static final Reference2LongOpenHashMap<ItemEntity> STATES = new Reference2LongOpenHashMap<>();
+    private static final ObjectArrayList<ItemEntity> QUEUE = new ObjectArrayList<>();
+
+    private static ClientWorld cachedWorld;
+    private static int cursor;
+    private static long tick;
+
+    public static void registerEvents() {
+        ClientTickEvents.END_CLIENT_TICK.register(OcclusionCache::update);
+
+        ClientEntityEvents.ENTITY_UNLOAD.register((entity, world) -> {
+            if (entity instanceof ItemEntity itemEntity) {
+                STATES.removeLong(itemEntity);
+            }
+        });
+
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> clear());
+    }
+
+    /**
+     * Whether the label of this entity was found behind a block recently.
+     */
+    public static boolean isOccluded(ItemEntity entity) {
+        long state = STATES.getLong(entity);
+        return (state & 1L) != 0 && (state >>> 1) > tick;
+    }
+
+    private static void update(MinecraftClient client) {
+        tick++;
+        NamedLootStats.occlusionRaycasts = 0;
+        if (client.world == null || NamedLootClient.CONFIG.useSeeThrough) {
+            clear();
+            return;
+        }
+        if (client.world != cachedWorld) {
+            clear();
+            cachedWorld = client.world;
+        }
+
+        Vec3d cameraPos = client.gameRenderer.getCamera().getPos();
+        double range = NamedLootClient.CONFIG.displayDistance > 0 ? NamedLootClient.CONFIG.displayDistance : UNLIMITED_RANGE;
+        double rangeSquared = range * range;
+
+        int raycasts = 0;
+        boolean refilled = false;
+        while (raycasts < RAYCASTS_PER_TICK) {
+            if (cursor >= QUEUE.size()) {
+                // Start the next round over the items in range right now, at most once per tick
+                if (refilled) {
+                    break;
+                }
+                QUEUE.clear();
+                ItemEntityTracker.forEachInRange(client.world, cameraPos, range, QUEUE::add);
+                cursor = 0;
+                refilled = true;
+                if (QUEUE.isEmpty()) {
+                    break;
+                }
+            }
+
+            // Items may have left the range or the world since the round started, skipping them is free
+            ItemEntity entity = QUEUE.get(cursor++);
+            if (entity.isRemoved() || entity.squaredDistanceTo(cameraPos) > rangeSquared) {
+                continue;
+            }
+
+            boolean occluded = isBlocked(client.world, cameraPos, getLabelAnchor(entity));
+            STATES.put(entity, ((tick + TIME_TO_LIVE) << 1) | (occluded ? 1L : 0L));
+            raycasts++;
+        }
+        NamedLootStats.occlusionRaycasts = raycasts;
+    }
+
+    // Point the label is drawn at, see WorldRenderEventHandler
+    private static Vec3d getLabelAnchor(ItemEntity entity) {
+        return entity.getPos().add(0, entity.getHeight() + NamedLootClient.CONFIG.verticalOffset, 0);
+    }
+
+    // Only opaque full blocks hide a label, glass and other see-through blocks do not
+    private static boolean isBlocked(ClientWorld world, Vec3d from, Vec3d to) {
+        return BlockView.raycast(from, to, world,
+                (blockView, pos) -> blockView.getBlockState(pos).isOpaqueFullCube() ? Boolean.TRUE : null,
+                blockView -> Boolean.FALSE);
+    }
+
+    private static void clear() {
+        STATES.clear();
+        QUEUE.clear();
+        cursor = 0;
+        cachedWorld = null;
+    }
+}
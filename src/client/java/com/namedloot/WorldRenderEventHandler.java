@@ -1,232 +1,305 @@
 package com.namedloot;
 
-import com.namedloot.config.NamedLootConfig;
+import com.namedloot.jfr.CandidateQueryEvent;
+import com.namedloot.jfr.LabelCullEvent;
+import com.namedloot.jfr.LabelDrawEvent;
+import com.namedloot.rules.RuleProgram;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderContext;
 import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderEvents;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.font.TextRenderer;
-import net.minecraft.client.render.RenderLayer;
-import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.render.Frustum;
 import net.minecraft.client.render.VertexConsumerProvider;
 import net.minecraft.client.util.math.MatrixStack;
-import net.minecraft.enchantment.Enchantment;
 import net.minecraft.entity.ItemEntity;
-import net.minecraft.item.ItemStack;
-import net.minecraft.text.MutableText;
-import net.minecraft.text.Style;
-import net.minecraft.text.Text;
-import net.minecraft.text.TextColor;
-import net.minecraft.util.Formatting;
-import net.minecraft.util.Rarity;
-import net.minecraft.util.hit.HitResult;
+import net.minecraft.text.OrderedText;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.math.RotationAxis;
 import net.minecraft.util.math.Box;
-import net.minecraft.enchantment.EnchantmentHelper;
+import net.minecraft.util.math.MathHelper;
 
 import java.util.*;
+import java.util.function.Consumer;
 
-import net.minecraft.registry.entry.RegistryEntry;
-import net.minecraft.world.RaycastContext;
 import org.joml.Matrix4f;
+import org.joml.Vector3f;
 
 public class WorldRenderEventHandler {
+    private static final LabelWorker LABEL_WORKER = new LabelWorker();
+    private static final LabelBudget LABEL_BUDGET = new LabelBudget();
+    private static final BackgroundBatch BACKGROUNDS = new BackgroundBatch();
+
+    // Snapshot entries that survived culling this frame, reused between frames
+    private static final List<ItemEntity> FRAME_ENTITIES = new ArrayList<>();
+    private static final IntArrayList FRAME_SLOTS = new IntArrayList();
+
+    // Per-frame label layouts, reused between frames
+    private static final List<LabelDraw> DRAWS = new ArrayList<>();
+    private static int drawCount;
+
+    // Label extent in blocks around its anchor (text is scaled by 0.025 per pixel)
+    private static final double LABEL_BOUNDS_HALF_WIDTH = 2.0;
+    private static final double LABEL_BOUNDS_HEIGHT = 1.5;
+    // Added to the view cone for turning before the next snapshot, and for sprint and speed FOV effects
+    private static final double VIEW_CONE_MARGIN_DEGREES = 35.0;
+
+    private static RuleProgram ruleProgram;
+
+    // Items returned by the tracker this tick, for the query event
+    private static int scannedCount;
 
     public static void registerEvents() {
+        // Prepare labels once per tick, after the tracker has moved items in its grid
+        ClientTickEvents.END_CLIENT_TICK.register(WorldRenderEventHandler::buildSnapshot);
+
         // Register the event that fires after entities are rendered
         WorldRenderEvents.AFTER_ENTITIES.register((context) -> {
-            MinecraftClient client = MinecraftClient.getInstance();
-
-            // Skip if game is paused or no world is loaded
-            // REMOVE the check for !NamedLootClient.CONFIG.enabled here
-            if (client.isPaused() || client.world == null) {
+            // Only measure while the overlay is shown, measuring has a cost of its own
+            if (!NamedLootStats.isEnabled()) {
+                renderLabels(context);
                 return;
             }
 
-            // Get all item entities within range
-            List<ItemEntity> itemEntitiesToRender = new ArrayList<>();
-
-            // Loop through all entities directly for compatibility
-            for (ItemEntity entity : client.world.getEntitiesByClass(ItemEntity.class,
-                    // Use a box around the camera to find item entities
-                    new Box(client.gameRenderer.getCamera().getBlockPos()).expand(
-                            // Use max distance from config, or default to 64 blocks
-                            NamedLootClient.CONFIG.displayDistance > 0 ?
-                                    NamedLootClient.CONFIG.displayDistance : 64),
-                    // Simple predicate that accepts all item entities
-                    itemEntity -> true)) {
-
-                // Apply distance check if needed
-                if (NamedLootClient.CONFIG.displayDistance > 0) {
-                    double distance = client.gameRenderer.getCamera().getPos().distanceTo(entity.getPos());
-                    if (distance > NamedLootClient.CONFIG.displayDistance) {
-                        continue;
-                    }
-                }
-
-                // If showNameOnHover is enabled, check if the player is looking at this entity
-                if (NamedLootClient.CONFIG.showNameOnHover) {
-                    if (isPlayerLookingAt(client, entity)) {
-                        itemEntitiesToRender.add(entity);
-                    }
-                } else {
-                    // Normal behavior - add all items
-                    itemEntitiesToRender.add(entity);
-                }
-            }
+            NamedLootStats.beginFrame();
+            renderLabels(context);
+            NamedLootStats.endFrame();
+        });
+    }
 
-            // Skip if no entities to render
-            if (itemEntitiesToRender.isEmpty()) {
-                return;
-            }
+    private static void renderLabels(WorldRenderContext context) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        NamedLootStats.candidates = 0;
+        NamedLootStats.culled = 0;
+        NamedLootStats.drawn = 0;
 
-            // Get render state
-            MatrixStack matrices = context.matrixStack();
-            float tickDelta = context.tickCounter().getTickDelta(false);
+        // Skip if game is paused or no world is loaded
+        // REMOVE the check for !NamedLootClient.CONFIG.enabled here
+        if (client.isPaused() || client.world == null) {
+            return;
+        }
 
-            TextRenderer textRenderer = client.textRenderer;
-            VertexConsumerProvider.Immediate immediate = client.getBufferBuilders().getEntityVertexConsumers();
+        // Swap in the latest labels from the worker, never waiting for it
+        LabelSnapshot snapshot = LABEL_WORKER.getLatest();
 
-            Vec3d cameraPos = client.gameRenderer.getCamera().getPos();
+        // Skip if no entities to render
+        if (snapshot.isEmpty()) {
+            return;
+        }
 
-            // Fix z position
-            itemEntitiesToRender.sort(Comparator.comparingDouble(
-                    entity -> -entity.getPos().distanceTo(cameraPos)
-            ));
+        // Get render state
+        MatrixStack matrices = context.matrixStack();
+        if (matrices == null) {
+            return;
+        }
+        float tickDelta = context.tickCounter().getTickDelta(false);
+        Vec3d cameraPos = client.gameRenderer.getCamera().getPos();
 
-            // Render all item name tags
-            for (ItemEntity entity : itemEntitiesToRender) {
-                renderItemNameTag(entity, matrices, immediate, client, textRenderer, tickDelta);
+        // May be null if another mod renders the world without one
+        Frustum frustum = context.frustum();
+
+        // The view changes every frame, so culling stays here
+        LabelCullEvent cullEvent = new LabelCullEvent();
+        cullEvent.begin();
+        FRAME_ENTITIES.clear();
+        FRAME_SLOTS.clear();
+        for (int i = 0; i < snapshot.size(); i++) {
+            ItemEntity entity = snapshot.getEntity(i);
+            if (entity.isRemoved()) {
+                continue;
             }
-        });
-    }
-
-    private static boolean isPlayerLookingAt(MinecraftClient client, ItemEntity entity) {
-        // Get the entity's position and bounding box
-        Vec3d entityPos = entity.getPos();
-        Box entityBox = entity.getBoundingBox();
-
-        // Get player's look vector
-        assert client.player != null;
-        Vec3d lookVec = client.player.getRotationVec(1.0F);
-        Vec3d playerPos = client.player.getEyePos();
 
-        // Determine the reach distance for hover detection
-        double reachDistance;
+            // Skip labels outside the view
+            if (frustum != null && !frustum.isVisible(getLabelBounds(entity))) {
+                continue;
+            }
 
-        if (NamedLootClient.CONFIG.displayDistance > 0) {
-            // If displayDistance is set, use it as the maximum hover distance
-            reachDistance = NamedLootClient.CONFIG.displayDistance;
-        } else {
-            // If displayDistance is 0 (unlimited), use a reasonable hover distance
-            reachDistance = 32.0;
+            FRAME_ENTITIES.add(entity);
+            FRAME_SLOTS.add(i);
+        }
+        NamedLootStats.candidates = snapshot.size();
+        NamedLootStats.culled = snapshot.size() - FRAME_ENTITIES.size();
+
+        TextRenderer textRenderer = client.textRenderer;
+        VertexConsumerProvider.Immediate immediate = client.getBufferBuilders().getEntityVertexConsumers();
+
+        // Keep only the nearest labels within the budget, ordered back-to-front to fix z position
+        int labelCount = LABEL_BUDGET.select(FRAME_ENTITIES, cameraPos, NamedLootClient.CONFIG.maxLabels);
+        if (cullEvent.shouldCommit()) {
+            cullEvent.candidates = snapshot.size();
+            cullEvent.culled = snapshot.size() - FRAME_ENTITIES.size();
+            cullEvent.selected = labelCount;
+            cullEvent.commit();
         }
 
-        Vec3d endPos = playerPos.add(lookVec.multiply(reachDistance));
+        // Lay out all item name tags and queue their detail backgrounds
+        LabelDrawEvent drawEvent = new LabelDrawEvent();
+        drawEvent.begin();
+        drawCount = 0;
+        for (int i = 0; i < labelCount; i++) {
+            int slot = FRAME_SLOTS.getInt(LABEL_BUDGET.get(i));
+            prepareItemNameTag(snapshot, slot, matrices, client, textRenderer, tickDelta);
+        }
+        NamedLootStats.drawn = drawCount;
 
-        // Check if the ray intersects with the entity's bounding box
-        var hitResult = entityBox.expand(0.5).raycast(playerPos, endPos);
+        // Emit every background quad together, then all the text
+        BACKGROUNDS.flush(immediate);
+        for (int i = 0; i < drawCount; i++) {
+            drawItemNameTag(DRAWS.get(i), immediate, textRenderer);
+        }
+        if (drawEvent.shouldCommit()) {
+            drawEvent.drawn = drawCount;
+            drawEvent.commit();
+        }
+    }
 
-        if (hitResult.isEmpty()) {
-            return false; // Ray doesn't hit the entity
+    // Collects the items to label once per tick and hands them to the label worker
+    private static void buildSnapshot(MinecraftClient client) {
+        if (client.world == null) {
+            LABEL_WORKER.reset();
+            return;
         }
 
-        // Check if there are blocks in the way
-        assert client.world != null;
-        var blockHitResult = client.world.raycast(
-                new RaycastContext(
-                        playerPos,
-                        entityPos,  // Use entity position as the end point
-                        RaycastContext.ShapeType.COLLIDER,
-                        RaycastContext.FluidHandling.NONE,
-                        client.player
-                )
+        Vec3d cameraPos = client.gameRenderer.getCamera().getPos();
+        float displayDistance = NamedLootClient.CONFIG.displayDistance;
+        double maxDistanceSquared = (double) displayDistance * displayDistance;
+
+        // With unlimited distance, use a box around the camera like before (64 blocks)
+        Box queryBox = displayDistance > 0 ? null :
+                new Box(client.gameRenderer.getCamera().getBlockPos()).expand(64);
+
+        // Frustum culling happens per frame, but items far outside the view can be skipped here
+        // already, so the worker doesn't match and format labels that can't be seen this tick
+        Vector3f look = client.gameRenderer.getCamera().getHorizontalPlane();
+        double viewConeHalfAngle = getViewConeHalfAngle(client);
+        double labelRadius = getLabelBoundsRadius();
+
+        // Capture everything labels depend on, the worker must not read the live config
+        LabelWorker.Batch batch = new LabelWorker.Batch(
+                getRuleProgram(),
+                NamedLootClient.CONFIG.getGeneration(),
+                NamedLootClient.CONFIG.enabled,
+                NamedLootClient.CONFIG.showDetails,
+                NamedLootClient.CONFIG.showDetailsOnlyOnHover
         );
 
-        // If the block hit result is of type MISS, there are no blocks in the way
-        // Otherwise, check if the distance to the block is greater than the distance to the entity
-        if (blockHitResult.getType() != HitResult.Type.MISS) {
-            double blockDist = blockHitResult.getPos().distanceTo(playerPos);
-            double entityDist = entityPos.distanceTo(playerPos);
+        // Resolve the hovered item once per tick and share it with every hover consumer
+        NamedLootStats.hoverRaycasts = 0;
+        boolean needsHover = NamedLootClient.CONFIG.showNameOnHover ||
+                (NamedLootClient.CONFIG.showDetails && NamedLootClient.CONFIG.showDetailsOnlyOnHover);
+        ItemEntity hoveredEntity = needsHover ? HoverResolver.resolve(client, getHoverReach()) : null;
 
-            // If block is closer than entity, the view is obstructed
-            return !(blockDist < entityDist);
-        }
+        CandidateQueryEvent queryEvent = new CandidateQueryEvent();
+        queryEvent.begin();
+        scannedCount = 0;
 
-        return true;
-    }
+        Consumer<ItemEntity> collector = entity -> {
+            scannedCount++;
+            if (entity.isRemoved()) {
+                return;
+            }
 
-    private static void renderItemNameTag(ItemEntity entity, MatrixStack matrices,
-                                          VertexConsumerProvider vertexConsumers,
-                                          MinecraftClient client, TextRenderer textRenderer,
-                                          float tickDelta) {
-        if(matrices == null) {
-            return;
-        }
-        MutableText formattedText = null;
-        ItemStack stack = entity.getStack();
-        String name = stack.getName().getString();
-        int count = stack.getCount();
-        List<NamedLootConfig.AdvancedRule> rules = NamedLootClient.CONFIG.advancedRules;
-
-        boolean advancedRuleApplied = false; // Flag to indicate if an advanced rule was applied
-
-        // 1. First, try to match and apply Advanced Rules
-        int i = 0;
-        while (i < rules.size()) {
-            NamedLootConfig.AdvancedRule leader = rules.get(i);
-            // We still need to check ruleEnabled for the leader to apply its format
-            // If the leader rule itself is disabled, we skip this whole group for formatting purposes.
-            // However, we still need to process subsequent chained conditions to find the start of the next group.
-            if (!leader.ruleEnabled) {
-                int nextGroupStartIndex = i + 1;
-                while (nextGroupStartIndex < rules.size() && (rules.get(nextGroupStartIndex).textFormat == null || rules.get(nextGroupStartIndex).textFormat.isEmpty())) {
-                    nextGroupStartIndex++; // Skip chained conditions of a disabled leader
-                }
-                i = nextGroupStartIndex;
-                continue; // Move to the next potential rule group
+            // Apply distance check (squared, no sqrt needed)
+            if (queryBox != null ? !queryBox.intersects(entity.getBoundingBox())
+                    : entity.squaredDistanceTo(cameraPos) > maxDistanceSquared) {
+                return;
             }
 
-            List<NamedLootConfig.AdvancedRule> groupConditions = new ArrayList<>();
-            groupConditions.add(leader);
-            int nextIndex = i + 1;
-            while (nextIndex < rules.size() && (rules.get(nextIndex).textFormat == null || rules.get(nextIndex).textFormat.isEmpty())) {
-                groupConditions.add(rules.get(nextIndex));
-                nextIndex++;
+            // The hovered item is in view by definition
+            if (entity != hoveredEntity && !isInViewCone(entity, cameraPos, look, viewConeHalfAngle, labelRadius)) {
+                return;
             }
 
-            boolean allConditionsMet = true;
-            for (NamedLootConfig.AdvancedRule condition : groupConditions) {
-                if (!checkCondition(condition, name, count)) {
-                    allConditionsMet = false;
-                    break;
-                }
+            // Labels behind walls would only be hidden by the depth test, skip them entirely
+            if (!NamedLootClient.CONFIG.useSeeThrough && OcclusionCache.isOccluded(entity)) {
+                return;
             }
 
-            if (allConditionsMet) {
-                // If a rule matches AND is enabled, use its formatting and mark as applied
-                formattedText = parseFormattedText(leader.textFormat, stack, String.valueOf(count));
-                advancedRuleApplied = true;
-                break; // Found a matching rule, stop checking
+            // The game keeps updating the entity's stack, so the worker gets a copy
+            batch.add(entity, entity.getStack().copy(), entity == hoveredEntity);
+        };
+
+        if (NamedLootClient.CONFIG.showNameOnHover) {
+            // If showNameOnHover is enabled, only the item the player is looking at is a candidate
+            if (hoveredEntity != null) {
+                collector.accept(hoveredEntity);
             }
+        } else if (displayDistance > 0) {
+            // Only visit the grid cells overlapping the display sphere
+            ItemEntityTracker.forEachInRange(client.world, cameraPos, displayDistance, collector);
+        } else {
+            ItemEntityTracker.getTrackedEntities(client.world).forEach(collector);
+        }
 
-            i = nextIndex;
+        if (queryEvent.shouldCommit()) {
+            queryEvent.scanned = scannedCount;
+            queryEvent.candidates = batch.size();
+            queryEvent.commit();
         }
 
-        // 2. If no Advanced Rule was applied, then fall back to Default/Automatic based on global 'enabled' flag
-        if (!advancedRuleApplied) {
-            // Check the global 'enabled' flag BEFORE applying default/automatic formatting
-            if (!NamedLootClient.CONFIG.enabled) {
-                return; // If global mod is disabled AND no advanced rule applied, do not render anything.
-            }
+        LABEL_WORKER.submit(batch);
+    }
 
-            // Normal fallback to default/automatic if global mod is enabled
-            if (NamedLootClient.CONFIG.useManualFormatting) {
-                formattedText = parseFormattedText(NamedLootClient.CONFIG.textFormat, stack, String.valueOf(count));
-            } else {
-                formattedText = createAutomaticFormattedText(stack, String.valueOf(count));
-            }
+    // Conservative bounds of the label drawn above an entity, used for frustum culling.
+    // The text width isn't known before formatting, so allow for a wide label with details.
+    private static Box getLabelBounds(ItemEntity entity) {
+        double labelY = entity.getHeight() + NamedLootClient.CONFIG.verticalOffset;
+        return entity.getBoundingBox()
+                .stretch(0, labelY + LABEL_BOUNDS_HEIGHT, 0)
+                .expand(LABEL_BOUNDS_HALF_WIDTH, 0, LABEL_BOUNDS_HALF_WIDTH);
+    }
+
+    // Half angle of a cone around the view direction that holds the whole frustum, plus a margin
+    private static double getViewConeHalfAngle(MinecraftClient client) {
+        double halfFov = Math.toRadians(client.options.getFov().getValue() / 2.0);
+        double aspect = (double) client.getWindow().getFramebufferWidth() / Math.max(client.getWindow().getFramebufferHeight(), 1);
+        // Angle to the frustum's corners, which are further out than its sides
+        double halfDiagonal = Math.atan(Math.tan(halfFov) * Math.sqrt(1.0 + aspect * aspect));
+        return halfDiagonal + Math.toRadians(VIEW_CONE_MARGIN_DEGREES);
+    }
+
+    // Radius of a sphere around the item's position that holds getLabelBounds
+    private static double getLabelBoundsRadius() {
+        double halfWidth = LABEL_BOUNDS_HALF_WIDTH + 0.5;
+        double height = 0.5 + Math.abs(NamedLootClient.CONFIG.verticalOffset) + LABEL_BOUNDS_HEIGHT;
+        return Math.sqrt(2.0 * halfWidth * halfWidth + height * height);
+    }
+
+    // Conservative: only false when the label's bounding sphere lies entirely outside the cone
+    private static boolean isInViewCone(ItemEntity entity, Vec3d cameraPos, Vector3f look, double coneHalfAngle,
+                                        double radius) {
+        if (coneHalfAngle >= Math.PI) {
+            return true;
+        }
+        double dx = entity.getX() - cameraPos.x;
+        double dy = entity.getY() - cameraPos.y;
+        double dz = entity.getZ() - cameraPos.z;
+        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (distance <= radius) {
+            return true;
+        }
+        double cos = (dx * look.x() + dy * look.y() + dz * look.z()) / distance;
+        double angle = Math.acos(MathHelper.clamp(cos, -1.0, 1.0));
+        return angle <= coneHalfAngle + Math.asin(radius / distance);
+    }
+
+    // Determine the reach distance for hover detection
+    private static double getHoverReach() {
+        if (NamedLootClient.CONFIG.displayDistance > 0) {
+            // If displayDistance is set, use it as the maximum hover distance
+            return NamedLootClient.CONFIG.displayDistance;
         }
+        // If displayDistance is 0 (unlimited), use a reasonable hover distance
+        return 32.0;
+    }
 
+    private static void prepareItemNameTag(LabelSnapshot snapshot, int slot, MatrixStack matrices,
+                                           MinecraftClient client, TextRenderer textRenderer,
+                                           float tickDelta) {
+        ItemEntity entity = snapshot.getEntity(slot);
+        ItemLabel label = snapshot.getLabel(slot);
+        List<OrderedText> details = snapshot.getDetails(slot);
 
         matrices.push();
 
@@ -251,339 +324,106 @@ public class WorldRenderEventHandler {
         // Scale the text appropriately
         matrices.scale(-0.025F, -0.025F, -0.025F);
 
-        float textOffset = -textRenderer.getWidth(formattedText) / 2.0F;
-
-        // Check for detail visibility based on hover option and global/rule enablement
-        // Dulu `shouldShowDetails` hanya berdasarkan `NamedLootClient.CONFIG.showDetails`
-        // Sekarang, logika ini harusnya sama dengan `formattedText` di atas:
-        // Details hanya akan ditampilkan jika:
-        // 1. Ada advanced rule yang cocok dan diaktifkan.
-        // 2. Atau, jika no advanced rule applied DAN NamedLootClient.CONFIG.enabled = true,
-        //    maka ikuti NamedLootClient.CONFIG.showDetails.
-        boolean shouldShowDetails = false;
-        if (advancedRuleApplied) {
-            // Jika ada advanced rule yang 적용, kita asumsikan detail juga diizinkan berdasarkan setting individual rule jika ada
-            // Namun, karena `ruleEnabled` hanya memengaruhi format teks, kita bisa pakai `NamedLootClient.CONFIG.showDetails`
-            // Ini bisa disesuaikan jika ingin setiap rule punya setting details sendiri
-            shouldShowDetails = NamedLootClient.CONFIG.showDetails; // For advanced rules, fall back to global showDetails
-        } else if (NamedLootClient.CONFIG.enabled) { // Hanya jika global diaktifkan
-            shouldShowDetails = NamedLootClient.CONFIG.showDetails;
-        }
+        float textOffset = -label.getWidth(textRenderer) / 2.0F;
 
-        // If showDetailsOnlyOnHover is enabled, check if the player is looking at this entity
-        if (shouldShowDetails && NamedLootClient.CONFIG.showDetailsOnlyOnHover) {
-            shouldShowDetails = isPlayerLookingAt(client, entity);
+        // Reuse draw entries between frames, the matrix is copied out of the stack
+        if (drawCount == DRAWS.size()) {
+            DRAWS.add(new LabelDraw());
         }
-
-        // Get enchantment details if needed
-        List<Text> details = new ArrayList<>();
-        if (shouldShowDetails) { // Only attempt to get enchantments if details should be shown
-            Set<RegistryEntry<Enchantment>> enchantmentEntries = EnchantmentHelper.getEnchantments(entity.getStack()).getEnchantments();
-            for (RegistryEntry<Enchantment> enchantmentEntry : enchantmentEntries) {
-                int level = EnchantmentHelper.getEnchantments(entity.getStack()).getLevel(enchantmentEntry);
-                Text enchantmentName = Enchantment.getName(enchantmentEntry, level);
-                details.add(enchantmentName);
-            }
+        LabelDraw draw = DRAWS.get(drawCount++);
+        draw.pose.set(matrices.peek().getPositionMatrix());
+        draw.label = label;
+        draw.details = details;
+        draw.textOffset = textOffset;
+
+        // Queue details background if needed, only if details should be shown
+        if (!details.isEmpty() && NamedLootClient.CONFIG.useBackgroundColor && NamedLootClient.CONFIG.useDetailBackgroundBox) {
+            int lineHeight = 10;
+            int padding = 2;
+
+            int maxWidth = label.getDetailsMaxWidth(textRenderer);
+
+            float xOffset = textOffset - padding;
+            float yOffset = -(details.size() * lineHeight);
+            float width   = xOffset + maxWidth + padding * 2;
+            float height  = yOffset + (details.size() * lineHeight) + padding;
+
+            BACKGROUNDS.add(draw.pose, xOffset, yOffset, width, height,
+                    NamedLootClient.CONFIG.detailBackgroundColor, NamedLootClient.CONFIG.useSeeThrough);
         }
 
+        matrices.pop();
+    }
+
+    private static void drawItemNameTag(LabelDraw draw, VertexConsumerProvider vertexConsumers,
+                                        TextRenderer textRenderer) {
+        List<OrderedText> details = draw.details;
+        TextRenderer.TextLayerType layerType = NamedLootClient.CONFIG.useSeeThrough ?
+                TextRenderer.TextLayerType.SEE_THROUGH :
+                TextRenderer.TextLayerType.NORMAL;
+
         // Draw text with the configured layer type and background
         textRenderer.draw(
-                formattedText,
-                textOffset,
-                shouldShowDetails && !details.isEmpty() ? -(details.size() * 10) - 10 : 0, // Adjust Y if details present
+                draw.label.getOrderedText(),
+                draw.textOffset,
+                !details.isEmpty() ? -(details.size() * 10) - 10 : 0, // Adjust Y if details present
                 0xFFFFFFFF, // Full brightness
                 false,
-                matrices.peek().getPositionMatrix(),
+                draw.pose,
                 vertexConsumers,
-                NamedLootClient.CONFIG.useSeeThrough ?
-                        TextRenderer.TextLayerType.SEE_THROUGH :
-                        TextRenderer.TextLayerType.NORMAL,
+                layerType,
                 NamedLootClient.CONFIG.useBackgroundColor ?
                         NamedLootClient.CONFIG.backgroundColor :
                         0x00000000, // Background color if enabled, otherwise transparent
                 0xF000F0 // Full brightness light
         );
 
-        // Draw details background if needed, only if details should be shown
-        if (shouldShowDetails && !details.isEmpty()) {
-            if (NamedLootClient.CONFIG.useBackgroundColor && NamedLootClient.CONFIG.useDetailBackgroundBox) {
-                int lineHeight = 10;
-                int padding = 2;
-
-                int maxWidth = details.stream()
-                        .mapToInt(textRenderer::getWidth)
-                        .max()
-                        .orElse(0);
-
-                float xOffset = textOffset - padding;
-                float yOffset = -(details.size() * lineHeight);
-                float width   = xOffset + maxWidth + padding * 2;
-                float height  = yOffset + (details.size() * lineHeight) + padding;
-
-                drawBackgroundBox(matrices, vertexConsumers, xOffset, yOffset, width, height,
-                        NamedLootClient.CONFIG.detailBackgroundColor, NamedLootClient.CONFIG.useSeeThrough);
-            }
-        }
-
-        // Render details if enabled and there are details to show
-        if (shouldShowDetails && !details.isEmpty()) { // Check details.isEmpty() to prevent drawing empty space
-            float yOffset = 0;
-            int detailColor = 0xAAAAAA;
-
-            for (Text detail : details) {
-                textRenderer.draw(
-                        detail,
-                        textOffset,
-                        -(details.size() * 10) + 2 + yOffset,
-                        detailColor,
-                        false,
-                        matrices.peek().getPositionMatrix(),
-                        vertexConsumers,
-                        NamedLootClient.CONFIG.useSeeThrough ?
-                                TextRenderer.TextLayerType.SEE_THROUGH :
-                                TextRenderer.TextLayerType.NORMAL,
-                        // Use detail background color if background enabled and not using box style
-                        (NamedLootClient.CONFIG.useBackgroundColor && !NamedLootClient.CONFIG.useDetailBackgroundBox) ?
-                                NamedLootClient.CONFIG.detailBackgroundColor : 0x00000000,
-                        0xF000F0
-                );
-                yOffset += 10;
-            }
-        }
-        matrices.pop();
-    }
-
-    private static boolean checkCondition(NamedLootConfig.AdvancedRule rule, String name, int count) {
-        // Nilai kosong seharusnya tidak pernah cocok untuk mencegah bug.
-        if (rule.value == null || rule.value.isEmpty()) {
-            return false;
-        }
-
-        switch (rule.condition) {
-            case "Contains":
-                // Pencocokan dibuat tidak case-sensitive untuk kemudahan penggunaan.
-                return name.toLowerCase().contains(rule.value.toLowerCase());
-            case "Count <":
-                try {
-                    return count < Integer.parseInt(rule.value);
-                } catch (NumberFormatException e) {
-                    return false;
-                }
-            case "Count >":
-                try {
-                    return count > Integer.parseInt(rule.value);
-                } catch (NumberFormatException e) {
-                    return false;
-                }
-            case "Count =":
-                try {
-                    return count == Integer.parseInt(rule.value);
-                } catch (NumberFormatException e) {
-                    return false;
-                }
+        // Render details if there are details to show
+        float yOffset = 0;
+        int detailColor = 0xAAAAAA;
+
+        for (OrderedText detail : details) {
+            textRenderer.draw(
+                    detail,
+                    draw.textOffset,
+                    -(details.size() * 10) + 2 + yOffset,
+                    detailColor,
+                    false,
+                    draw.pose,
+                    vertexConsumers,
+                    layerType,
+                    // Use detail background color if background enabled and not using box style
+                    (NamedLootClient.CONFIG.useBackgroundColor && !NamedLootClient.CONFIG.useDetailBackgroundBox) ?
+                            NamedLootClient.CONFIG.detailBackgroundColor : 0x00000000,
+                    0xF000F0
+            );
+            yOffset += 10;
         }
-        return false;
     }
 
-
-    private static void drawBackgroundBox(MatrixStack matrices, VertexConsumerProvider provider, float x1, float y1, float x2, float y2, int color, boolean useSeeThrough) {
-        Matrix4f matrix = matrices.peek().getPositionMatrix();
-        // Select the appropriate RenderLayer based on the useSeeThrough setting
-        RenderLayer layer = useSeeThrough ? RenderLayer.getTextBackgroundSeeThrough() : RenderLayer.getTextBackground();
-        VertexConsumer buffer = provider.getBuffer(layer);
-
-        // Draw the quad
-        float red = (float)(color >> 16 & 255) / 255.0F;
-        float green = (float)(color >> 8 & 255) / 255.0F;
-        float blue = (float)(color & 255) / 255.0F;
-        float alpha = (float)(color >> 24 & 255) / 255.0F; // Use alpha from the color
-
-        buffer.vertex(matrix, x1, y2, -1).color(red, green, blue, alpha).light(0xF000F0); // Add light like text
-        buffer.vertex(matrix, x2, y2, -1).color(red, green, blue, alpha).light(0xF000F0);
-        buffer.vertex(matrix, x2, y1, -1).color(red, green, blue, alpha).light(0xF000F0);
-        buffer.vertex(matrix, x1, y1, -1).color(red, green, blue, alpha).light(0xF000F0);
+    // Counters of the label cache as of the latest snapshot, the cache itself belongs to the worker
+    static LabelCache.Stats getLabelCacheStats() {
+        return LABEL_WORKER.getLatest().getCacheStats();
     }
 
-    public static MutableText createAutomaticFormattedText(ItemStack itemStack, String countText) {
-        MutableText formattedText = Text.literal("");
-        String format = NamedLootClient.CONFIG.textFormat;
-
-        // Set name color from configuration (will be used if conditions are not met)
-        int configNameRed = (int)(NamedLootClient.CONFIG.nameRed * 255);
-        int configNameGreen = (int)(NamedLootClient.CONFIG.nameGreen * 255);
-        int configNameBlue = (int)(NamedLootClient.CONFIG.nameBlue * 255);
-        int configNameColor = (configNameRed << 16) | (configNameGreen << 8) | configNameBlue;
-
-        // Set count color
-        int countRed = (int)(NamedLootClient.CONFIG.countRed * 255);
-        int countGreen = (int)(NamedLootClient.CONFIG.countGreen * 255);
-        int countBlue = (int)(NamedLootClient.CONFIG.countBlue * 255);
-        int countColor = (countRed << 16) | (countGreen << 8) | countBlue;
-
-        int currentIndex = 0;
-        while (currentIndex < format.length()) {
-            int nameIndex = format.indexOf("{name}", currentIndex);
-            int countIndex = format.indexOf("{count}", currentIndex);
-
-            // Determine the nearest placeholder
-            int nextPlaceholderIndex = -1;
-            String placeholderType = null;
-
-            if (nameIndex != -1 && (countIndex == -1 || nameIndex < countIndex)) {
-                nextPlaceholderIndex = nameIndex;
-                placeholderType = "name";
-            } else if (countIndex != -1) {
-                nextPlaceholderIndex = countIndex;
-                placeholderType = "count";
-            }
-
-            // If there are no more placeholders, add the remaining literal text
-            if (nextPlaceholderIndex == -1) {
-                formattedText.append(Text.literal(format.substring(currentIndex)));
-                break;
-            }
-
-            // Add literal text before placeholder
-            if (nextPlaceholderIndex > currentIndex) {
-                formattedText.append(Text.literal(format.substring(currentIndex, nextPlaceholderIndex)));
-            }
-
-            // Process placeholder
-            if ("name".equals(placeholderType)) {
-                // Handle {name} placeholder
-                if (!NamedLootClient.CONFIG.overrideItemColors) {
-                    TextColor existingColor = itemStack.getName().getStyle().getColor();
-                    boolean isCommon = itemStack.getRarity().equals(Rarity.COMMON);
-
-                    // Logic: If the item name has a built-in color (not null/white) OR rarity is NOT COMMON,
-                    // use getFormattedName (maintaining built-in color and style)
-                    if (existingColor != null && existingColor != TextColor.fromFormatting(Formatting.WHITE) || !isCommon) {
-                        formattedText.append(itemStack.getFormattedName());
-                    } else {
-                        // If there is no built-in color (or white) AND rarity is COMMON,
-                        // use plain name with style from configuration
-                        String plainName = itemStack.getName().getString();
-                        Style nameStyle = Style.EMPTY.withColor(configNameColor);
-                        if (NamedLootClient.CONFIG.nameBold) nameStyle = nameStyle.withBold(true);
-                        if (NamedLootClient.CONFIG.nameItalic) nameStyle = nameStyle.withItalic(true);
-                        if (NamedLootClient.CONFIG.nameUnderline) nameStyle = nameStyle.withUnderline(true);
-                        if (NamedLootClient.CONFIG.nameStrikethrough) nameStyle = nameStyle.withStrikethrough(true);
-                        formattedText.append(Text.literal(plainName).setStyle(nameStyle));
-                    }
-                } else {
-                    // If override is active, always use plain name with style from configuration
-                    String plainName = itemStack.getName().getString();
-                    Style nameStyle = Style.EMPTY.withColor(configNameColor);
-                    if (NamedLootClient.CONFIG.nameBold) nameStyle = nameStyle.withBold(true);
-                    if (NamedLootClient.CONFIG.nameItalic) nameStyle = nameStyle.withItalic(true);
-                    if (NamedLootClient.CONFIG.nameUnderline) nameStyle = nameStyle.withUnderline(true);
-                    if (NamedLootClient.CONFIG.nameStrikethrough) nameStyle = nameStyle.withStrikethrough(true);
-                    formattedText.append(Text.literal(plainName).setStyle(nameStyle));
-                }
-                currentIndex = nextPlaceholderIndex + "{name}".length();
-
-            } else {
-                // Handle {count} placeholder
-                Style countStyle = Style.EMPTY.withColor(countColor);
-                if (NamedLootClient.CONFIG.countBold) countStyle = countStyle.withBold(true);
-                if (NamedLootClient.CONFIG.countItalic) countStyle = countStyle.withItalic(true);
-                if (NamedLootClient.CONFIG.countUnderline) countStyle = countStyle.withUnderline(true);
-                if (NamedLootClient.CONFIG.countStrikethrough) countStyle = countStyle.withStrikethrough(true);
-                formattedText.append(Text.literal(countText).setStyle(countStyle));
-                currentIndex = nextPlaceholderIndex + "{count}".length();
+    // Recompile the advanced rules and formats only when the config has been edited or replaced.
+    // Rule edits, language and tag reloads (and so joining a world) all end up here. Only called
+    // from the tick, so edits in the config screen are compiled at most once per tick.
+    private static RuleProgram getRuleProgram() {
+        if (ruleProgram == null || !ruleProgram.isCompiledFrom(NamedLootClient.CONFIG)) {
+            if (ruleProgram != null) {
+                ruleProgram.discard();
             }
+            ruleProgram = RuleProgram.compile(NamedLootClient.CONFIG);
+            ruleProgram.precomputeItemTable();
         }
-
-        return formattedText;
+        return ruleProgram;
     }
 
-    public static MutableText parseFormattedText(String format, ItemStack itemStack, String countText) {
-        MutableText result = Text.literal("");
-        Style currentStyle = Style.EMPTY;
-        StringBuilder currentSegment = new StringBuilder();
-
-        for (int i = 0; i < format.length(); i++) {
-            char c = format.charAt(i);
-
-            // Handle ampersand formatting codes
-            if (c == '&' && i + 1 < format.length()) {
-                if (!currentSegment.isEmpty()) {
-                    result.append(Text.literal(currentSegment.toString()).setStyle(currentStyle));
-                    currentSegment.setLength(0);
-                }
-                currentStyle = applyFormatCode(currentStyle, format.charAt(++i));
-                continue;
-            }
-
-            // Check for placeholder start
-            if (c == '{') {
-                int placeholderEnd = format.indexOf('}', i);
-                if (placeholderEnd != -1) {
-                    String placeholder = format.substring(i, placeholderEnd + 1);
-
-                    // Handle placeholder
-                    if (placeholder.equals("{name}")) {
-                        result.append(Text.literal(currentSegment.toString()).setStyle(currentStyle));
-                        currentSegment.setLength(0);
-
-                        MutableText nameText;
-                        if (!NamedLootClient.CONFIG.overrideItemColors &&
-                                (itemStack.getName().getStyle().getColor() != null ||
-                                        !itemStack.getRarity().equals(Rarity.COMMON))) {
-                            nameText = itemStack.getFormattedName().copy();
-                        } else {
-                            nameText = Text.literal(itemStack.getName().getString()).setStyle(currentStyle);
-                        }
-                        result.append(nameText);
-                        i = placeholderEnd;
-                        continue;
-                    } else if (placeholder.equals("{count}")) {
-                        result.append(Text.literal(currentSegment.toString()).setStyle(currentStyle));
-                        currentSegment.setLength(0);
-                        result.append(Text.literal(countText).setStyle(currentStyle));
-                        i = placeholderEnd;
-                        continue;
-                    }
-                }
-            }
-
-            currentSegment.append(c);
-        }
-
-        // Add remaining text
-        if (!currentSegment.isEmpty()) {
-            result.append(Text.literal(currentSegment.toString()).setStyle(currentStyle));
-        }
-
-        return result;
-    }
-
-    private static Style applyFormatCode(Style currentStyle, char code) {
-        return switch (code) {
-            case '0' -> currentStyle.withColor(TextColor.fromRgb(0x000000));
-            case '1' -> currentStyle.withColor(TextColor.fromRgb(0x0000AA));
-            case '2' -> currentStyle.withColor(TextColor.fromRgb(0x00AA00));
-            case '3' -> currentStyle.withColor(TextColor.fromRgb(0x00AAAA));
-            case '4' -> currentStyle.withColor(TextColor.fromRgb(0xAA0000));
-            case '5' -> currentStyle.withColor(TextColor.fromRgb(0xAA00AA));
-            case '6' -> currentStyle.withColor(TextColor.fromRgb(0xFFAA00));
-            case '7' -> currentStyle.withColor(TextColor.fromRgb(0xAAAAAA));
-            case '8' -> currentStyle.withColor(TextColor.fromRgb(0x555555));
-            case '9' -> currentStyle.withColor(TextColor.fromRgb(0x5555FF));
-            case 'a' -> currentStyle.withColor(TextColor.fromRgb(0x55FF55));
-            case 'b' -> currentStyle.withColor(TextColor.fromRgb(0x55FFFF));
-            case 'c' -> currentStyle.withColor(TextColor.fromRgb(0xFF5555));
-            case 'd' -> currentStyle.withColor(TextColor.fromRgb(0xFF55FF));
-            case 'e' -> currentStyle.withColor(TextColor.fromRgb(0xFFFF55));
-            case 'f' -> currentStyle.withColor(TextColor.fromRgb(0xFFFFFF));
-            case 'k' -> currentStyle.withObfuscated(true);
-            case 'l' -> currentStyle.withBold(true);
-            case 'm' -> currentStyle.withStrikethrough(true);
-            case 'n' -> currentStyle.withUnderline(true);
-            case 'o' -> currentStyle.withItalic(true);
-            case 'r' -> Style.EMPTY;
-            default -> currentStyle;
-        };
+    private static final class LabelDraw {
+        final Matrix4f pose = new Matrix4f();
+        ItemLabel label;
+        List<OrderedText> details;
+        float textOffset;
     }
-
-}
\ No newline at end of file
+}
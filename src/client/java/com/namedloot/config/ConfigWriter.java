@@ -0,0 +1,108 @@
+package com.namedloot.config;
+
+import com.google.gson.Gson;
+import com.namedloot.NamedLoot;
+import com.namedloot.jfr.ConfigSaveEvent;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes the config file on a background thread. Saves requested in quick
+ * succession are coalesced, only the latest snapshot is written once no new
+ * save arrived for {@link #DEBOUNCE_MILLIS}. Files are written next to the
+ * target and moved over it, so a crash never leaves a half-written config.
+ */
+final class ConfigWriter {
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private final Path file;
+    private final Path tempFile;
+    private final Gson gson;
+
+    private final AtomicReference<NamedLootConfig> pending = new AtomicReference<>();
+    private final Object writeLock = new Object();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "NamedLoot Config Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> scheduledWrite;
+
+    ConfigWriter(Path file, Gson gson) {
+        this.file = file;
+        this.tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        this.gson = gson;
+    }
+
+    /**
+     * Schedules a write of {@code snapshot}, which must not be modified afterwards.
+     */
+    synchronized void schedule(NamedLootConfig snapshot) {
+        pending.set(snapshot);
+        if (scheduledWrite != null) {
+            scheduledWrite.cancel(false);
+        }
+        scheduledWrite = executor.schedule(this::writePending, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes any pending snapshot right away on the calling thread.
+     */
+    void flush() {
+        synchronized (this) {
+            if (scheduledWrite != null) {
+                scheduledWrite.cancel(false);
+                scheduledWrite = null;
+            }
+        }
+        writePending();
+    }
+
+    private void writePending() {
+        // Taking the snapshot under the lock keeps writes in the order they were requested
+        synchronized (writeLock) {
+            NamedLootConfig snapshot = pending.getAndSet(null);
+            if (snapshot == null) {
+                return;
+            }
+
+            ConfigSaveEvent event = new ConfigSaveEvent();
+            event.begin();
+            try {
+                Files.createDirectories(file.getParent());
+                try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                    gson.toJson(snapshot, writer);
+                }
+                move();
+                event.success = true;
+            } catch (IOException e) {
+                NamedLoot.LOGGER.error("Failed to save config", e);
+            }
+
+            if (event.shouldCommit()) {
+                event.advancedRules = snapshot.advancedRules != null ? snapshot.advancedRules.size() : 0;
+                event.commit();
+            }
+        }
+    }
+
+    private void move() throws IOException {
+        try {
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Some file systems can't replace atomically, a plain replace is still better than a partial write
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
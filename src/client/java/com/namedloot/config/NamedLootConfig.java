@@ -3,21 +3,22 @@ package com.namedloot.config;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.namedloot.NamedLoot;
+import com.namedloot.rules.RuleProgram;
 
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 
 import java.util.List;
 import java.util.ArrayList;
 
-public class NamedLootConfig {
+public class NamedLootConfig implements Cloneable {
     public boolean enabled = true;
 
     // Default values
     public float verticalOffset = 0.5F;
     public float displayDistance = 0.0F; // 0 means unlimited
+    public int maxLabels = 256; // Nearest labels drawn per frame, 0 means unlimited
     public String textFormat = "{name} &6&lx{count}";
     public String manualTextFormat = "{name} x{count}"; // Default manual value that can be changed later
     public String automaticTextFormat = "{name} x{count}";
@@ -62,21 +63,60 @@ public class NamedLootConfig {
     // Hover options
     public boolean showNameOnHover = false; // option for showing names only on hover
 
+    // Debug options
+    public boolean showDebugOverlay = false; // NamedLoot's own performance numbers on the HUD
+
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     private static final File CONFIG_FILE = new File("config/namedloot.json");
+    private static final ConfigWriter WRITER = new ConfigWriter(CONFIG_FILE.toPath(), GSON);
 
-    public static class AdvancedRule {
+    public static class AdvancedRule implements Cloneable {
         public String condition = "Contains";
         public String value = "";
         public String textFormat = "{name} x{count}";
 
         public boolean ruleEnabled = true;
 
+        // Set by validate() for a value that can never match, e.g. a count that is not a number or an unknown tag (not saved)
+        private transient boolean invalid = false;
+
         public AdvancedRule() {}
+
+        /**
+         * Checks the value against the condition once, so the Advanced tab can
+         * flag it. Empty values are not flagged, they are still being filled in.
+         */
+        public void validate() {
+            invalid = value != null && !value.isEmpty() && !RuleProgram.isValid(this);
+        }
+
+        public boolean isInvalid() {
+            return invalid;
+        }
+
+        @Override
+        public AdvancedRule clone() {
+            try {
+                return (AdvancedRule) super.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new AssertionError(e);
+            }
+        }
     }
 
     public List<AdvancedRule> advancedRules = new ArrayList<>();
 
+    // Bumped on every edit so compiled rules and cached labels know when they are stale (not saved)
+    private transient int generation = 0;
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public void markChanged() {
+        generation++;
+    }
+
     public static NamedLootConfig load() {
         NamedLootConfig config = new NamedLootConfig();
 
@@ -84,6 +124,10 @@ public class NamedLootConfig {
             try (FileReader reader = new FileReader(CONFIG_FILE)) {
                 NamedLootConfig loaded = GSON.fromJson(reader, NamedLootConfig.class);
                 if (loaded != null) {
+                    if (loaded.advancedRules == null) {
+                        loaded.advancedRules = new ArrayList<>();
+                    }
+                    // Rules are validated once registries and tags are known, see validateRules()
                     return loaded;
                 }
             } catch (IOException e) {
@@ -95,14 +139,54 @@ public class NamedLootConfig {
         return config;
     }
 
+    /**
+     * Validates every rule and logs how many can never match. Item ids and tags
+     * are looked up in the registries, so this runs when the client receives
+     * tags rather than at load, when other mods may not have registered their
+     * items yet.
+     */
+    public void validateRules() {
+        int invalidCount = 0;
+        for (AdvancedRule rule : advancedRules) {
+            rule.validate();
+            if (rule.isInvalid()) {
+                invalidCount++;
+            }
+        }
+        if (invalidCount > 0) {
+            NamedLoot.LOGGER.warn("{} advanced rule(s) have a value that can never match and are skipped", invalidCount);
+        }
+    }
+
+    /**
+     * Saves a copy of the config in the background. Repeated saves within a
+     * short time are written once, see {@link #flush()}.
+     */
     public static void save(NamedLootConfig config) {
-        try {
+        WRITER.schedule(config.copy());
+    }
+
+    /**
+     * Writes a pending save immediately, e.g. before the game exits.
+     */
+    public static void flush() {
+        WRITER.flush();
+    }
 
-            try (FileWriter writer = new FileWriter(CONFIG_FILE)) {
-                GSON.toJson(config, writer);
+    // Copy for the writer thread, so the screen can keep editing while it serializes
+    public NamedLootConfig copy() {
+        NamedLootConfig copy;
+        try {
+            copy = (NamedLootConfig) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        if (advancedRules != null) {
+            copy.advancedRules = new ArrayList<>(advancedRules.size());
+            for (AdvancedRule rule : advancedRules) {
+                copy.advancedRules.add(rule.clone());
             }
-        } catch (IOException e) {
-            NamedLoot.LOGGER.error("Failed to save config", e);
         }
+        return copy;
     }
 }
\ No newline at end of file
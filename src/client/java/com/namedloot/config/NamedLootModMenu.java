@@ -3,17 +3,20 @@ package com.namedloot.config;
 import com.terraformersmc.modmenu.api.ConfigScreenFactory;
 import com.terraformersmc.modmenu.api.ModMenuApi;
 import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.gui.Drawable;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.gui.tooltip.Tooltip;
 import net.minecraft.client.gui.widget.ButtonWidget;
+import net.minecraft.client.gui.widget.ClickableWidget;
 import net.minecraft.client.gui.widget.SliderWidget;
 import net.minecraft.client.gui.widget.TextFieldWidget;
 import net.minecraft.text.MutableText;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
 import net.minecraft.item.ItemStack;
+import com.namedloot.FormatTemplate;
 import com.namedloot.NamedLootClient;
-import com.namedloot.WorldRenderEventHandler;
+import com.namedloot.NamedLootStats;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
@@ -37,6 +40,9 @@ public class NamedLootModMenu implements ModMenuApi {
         private static final int PREVIEW_SIZE = 30;
         private static final int PREVIEW_X_OFFSET = 120;
 
+        // Max labels slider positions: 64 limits from 8 to 512, then unlimited
+        private static final int MAX_LABELS_STEPS = 64;
+
         // Add scrolling variables
         private int scrollOffset = 0;
         private boolean isScrolling = false;
@@ -49,6 +55,8 @@ public class NamedLootModMenu implements ModMenuApi {
 
         private static final int SECTION_TITLE_COLOR = 0xFFFFAA00;
         private static final int SECTION_SEPARATOR_COLOR = 0x66FFFFFF;
+        private static final int VALID_VALUE_COLOR = 0xE0E0E0; // TextFieldWidget default
+        private static final int INVALID_VALUE_COLOR = 0xFF5555;
 
         private boolean needsInlineColorReference = false;
 
@@ -56,6 +64,23 @@ public class NamedLootModMenu implements ModMenuApi {
 
         private int currentTab = 0; // 0: Default, 1: Advanced
 
+        // Scrolled content of the current tab; on the Advanced tab also the rule groups and
+        // what comes after them, which are laid out again when the search changes
+        private final ContentGroup content = new ContentGroup();
+        private final List<RuleRow> ruleRows = new ArrayList<>();
+        private final ContentGroup ruleFooter = new ContentGroup();
+        private ContentGroup building;
+        private int ruleRowsTop;
+
+        // Advanced tab search, kept while the screen is open
+        private final RuleSearchIndex ruleSearch = new RuleSearchIndex();
+        private String ruleSearchQuery = "";
+
+        // Format preview, compiled again only when the config generation changes
+        private final ItemStack previewItem = new ItemStack(net.minecraft.item.Items.DIAMOND, 64);
+        private FormatTemplate previewTemplate;
+        private int previewGeneration = -1;
+
         public NamedLootConfigScreen(Screen parent) {
             super(Text.translatable("text.namedloot.config"));
             this.parent = parent;
@@ -71,6 +96,10 @@ public class NamedLootModMenu implements ModMenuApi {
             previousHeight = this.height;
 
             this.clearChildren();
+            content.clear();
+            ruleRows.clear();
+            ruleFooter.clear();
+            this.addDrawable(this::renderScrolledContent);
 
             // Store tab buttons separately - don't add them as drawableChild yet
             // We'll render them manually in render()
@@ -82,10 +111,12 @@ public class NamedLootModMenu implements ModMenuApi {
             }
 
             validateScrollOffset();
+            scrollContent();
         }
 
+        // Laid out at scroll offset 0 and built once, scrolling only moves it, see scrollContent()
         private void renderDefaultTab() {
-            int yPos = 80 + scrollOffset;
+            int yPos = 80;
 
             // ==========================================================
             // GENERAL SECTION
@@ -99,7 +130,8 @@ public class NamedLootModMenu implements ModMenuApi {
                     NamedLootClient.CONFIG.enabled,
                     (checkbox) -> NamedLootClient.CONFIG.enabled = checkbox,
                     this.width / 2 - 100, yPos, 200,
-                    "options.namedloot.tooltip.mod_enabled"
+                    "options.namedloot.tooltip.mod_enabled",
+                    true
             );
             yPos += 24;
 
@@ -119,10 +151,10 @@ public class NamedLootModMenu implements ModMenuApi {
                     this.updateMessage();
                 }
             };
-            this.addDrawableChild(verticalOffsetSlider);
+            addContentWidget(verticalOffsetSlider);
 
             // Reset vertical offset button
-            this.addDrawableChild(ButtonWidget.builder(
+            addContentWidget(ButtonWidget.builder(
                             Text.translatable("options.namedloot.reset"), button -> {
                                 NamedLootClient.CONFIG.verticalOffset = 0.5F;
                                 this.init();
@@ -153,16 +185,48 @@ public class NamedLootModMenu implements ModMenuApi {
                     this.updateMessage();
                 }
             };
-            this.addDrawableChild(distanceSlider);
+            addContentWidget(distanceSlider);
 
             // Reset distance button
-            this.addDrawableChild(ButtonWidget.builder(
+            addContentWidget(ButtonWidget.builder(
                             Text.translatable("options.namedloot.reset"), button -> {
                                 NamedLootClient.CONFIG.displayDistance = 0.0F;
                                 this.init();
                             }).dimensions(this.width / 2 + 105, yPos, 40, 20)
                     .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.reset_format")))
                     .build());
+            yPos += 26;
+
+            // Max Labels Slider
+            SliderWidget maxLabelsSlider = new SliderWidget(this.width / 2 - 100, yPos, 200, 20,
+                    Text.translatable("options.namedloot.max_labels",
+                            NamedLootClient.CONFIG.maxLabels == 0 ? "∞" : NamedLootClient.CONFIG.maxLabels),
+                    maxLabelsToSliderValue(NamedLootClient.CONFIG.maxLabels)) {
+                @Override
+                protected void updateMessage() {
+                    this.setMessage(Text.translatable("options.namedloot.max_labels",
+                            NamedLootClient.CONFIG.maxLabels == 0 ? "∞" : NamedLootClient.CONFIG.maxLabels));
+                }
+
+                @Override
+                protected void applyValue() {
+                    // Steps of 8 labels from 8 to 512, unlimited (0) at the right end
+                    int step = (int) Math.round(this.value * MAX_LABELS_STEPS);
+                    NamedLootClient.CONFIG.maxLabels = step == MAX_LABELS_STEPS ? 0 : (step + 1) * 8;
+                    this.updateMessage();
+                }
+            };
+            maxLabelsSlider.setTooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.max_labels")));
+            addContentWidget(maxLabelsSlider);
+
+            // Reset max labels button
+            addContentWidget(ButtonWidget.builder(
+                            Text.translatable("options.namedloot.reset"), button -> {
+                                NamedLootClient.CONFIG.maxLabels = 256;
+                                this.init();
+                            }).dimensions(this.width / 2 + 105, yPos, 40, 20)
+                    .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.reset_format")))
+                    .build());
             yPos += 30;
 
             // ==========================================================
@@ -177,7 +241,8 @@ public class NamedLootModMenu implements ModMenuApi {
                     NamedLootClient.CONFIG.overrideItemColors,
                     (checkbox) -> NamedLootClient.CONFIG.overrideItemColors = checkbox,
                     this.width / 2 - 100, yPos, 200,
-                    null
+                    null,
+                    true
             );
             yPos += 24;
 
@@ -189,7 +254,8 @@ public class NamedLootModMenu implements ModMenuApi {
                         this.init(); // Reinitialize to show/hide the sub-option
                     },
                     this.width / 2 - 100, yPos, 200,
-                    null
+                    null,
+                    true
             );
             yPos += 24;
 
@@ -200,7 +266,8 @@ public class NamedLootModMenu implements ModMenuApi {
                         NamedLootClient.CONFIG.showDetailsOnlyOnHover,
                         (checkbox) -> NamedLootClient.CONFIG.showDetailsOnlyOnHover = checkbox,
                         this.width / 2 - 80, yPos, 160,
-                        null
+                        null,
+                        false
                 );
                 yPos += 24;
             }
@@ -213,7 +280,8 @@ public class NamedLootModMenu implements ModMenuApi {
                         this.init(); // Refresh to show/hide sub-option
                     },
                     this.width / 2 - 100, yPos, 200,
-                    null
+                    null,
+                    false
             );
             yPos += 24;
 
@@ -222,7 +290,8 @@ public class NamedLootModMenu implements ModMenuApi {
                     NamedLootClient.CONFIG.useSeeThrough,
                     (checkbox) -> NamedLootClient.CONFIG.useSeeThrough = checkbox,
                     this.width / 2 - 100, yPos, 200,
-                    null
+                    null,
+                    false
             );
             yPos += 24;
 
@@ -234,7 +303,8 @@ public class NamedLootModMenu implements ModMenuApi {
                         this.init();
                     },
                     this.width / 2 - 100, yPos, 200,
-                    null
+                    null,
+                    false
             );
             yPos += 24;
 
@@ -243,7 +313,7 @@ public class NamedLootModMenu implements ModMenuApi {
                 // Item name background opacity slider
                 int labelSliderBackgroundOpacityY = yPos;
                 float opacity = ((NamedLootClient.CONFIG.backgroundColor >>> 24) & 0xFF) / 255.0F;
-                this.addDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
+                addContentDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
                         Text.translatable("options.namedloot.item_background_opacity"),
                         this.width / 2 - 100, labelSliderBackgroundOpacityY, 0xFFFFFF));
                 yPos += 16;
@@ -265,12 +335,12 @@ public class NamedLootModMenu implements ModMenuApi {
                         this.updateMessage();
                     }
                 };
-                this.addDrawableChild(bgOpacitySlider);
+                addContentWidget(bgOpacitySlider);
                 yPos += 26;
 
                 // Detail background type options as radio-style buttons
                 int detailBackgroundTypeYPos = yPos;
-                this.addDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
+                addContentDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
                         Text.translatable("options.namedloot.detail_background_type"),
                         this.width / 2 - 100, detailBackgroundTypeYPos, 0xFFFFFF));
                 yPos += 16;
@@ -295,14 +365,14 @@ public class NamedLootModMenu implements ModMenuApi {
                     inlineButton.active = false;
                 }
 
-                this.addDrawableChild(boxButton);
-                this.addDrawableChild(inlineButton);
+                addContentWidget(boxButton);
+                addContentWidget(inlineButton);
                 yPos += 26;
 
                 // Detail background opacity slider
                 int labelSliderDetailBackgroundOpacityY = yPos;
                 float detailOpacity = ((NamedLootClient.CONFIG.detailBackgroundColor >>> 24) & 0xFF) / 255.0F;
-                this.addDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
+                addContentDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
                         Text.translatable("options.namedloot.detail_background_opacity"),
                         this.width / 2 - 100, labelSliderDetailBackgroundOpacityY, 0xFFFFFF));
                 yPos += 16;
@@ -324,10 +394,23 @@ public class NamedLootModMenu implements ModMenuApi {
                         this.updateMessage();
                     }
                 };
-                this.addDrawableChild(detailBgOpacitySlider);
+                addContentWidget(detailBgOpacitySlider);
                 yPos += 26;
             }
 
+            addCheckbox(
+                    "options.namedloot.debug_overlay",
+                    NamedLootClient.CONFIG.showDebugOverlay,
+                    (checkbox) -> {
+                        NamedLootClient.CONFIG.showDebugOverlay = checkbox;
+                        NamedLootStats.reset(); // Start a fresh timing window
+                    },
+                    this.width / 2 - 100, yPos, 200,
+                    "options.namedloot.tooltip.debug_overlay",
+                    false
+            );
+            yPos += 24;
+
             // ==========================================================
             // TEXT FORMAT SECTION
             // ==========================================================
@@ -336,7 +419,7 @@ public class NamedLootModMenu implements ModMenuApi {
             yPos += 20;
 
             // Manual formatting toggle with a more descriptive label
-            this.addDrawableChild(ButtonWidget.builder(
+            addContentWidget(ButtonWidget.builder(
                     Text.translatable("options.namedloot.manual_formatting",
                             NamedLootClient.CONFIG.useManualFormatting ? "ON" : "OFF"), button -> {
                         // If manual formatting is active, save the manual value and restore the automatic value
@@ -351,13 +434,14 @@ public class NamedLootModMenu implements ModMenuApi {
                         NamedLootClient.CONFIG.useManualFormatting = !NamedLootClient.CONFIG.useManualFormatting;
                         button.setMessage(Text.translatable("options.namedloot.manual_formatting",
                                 NamedLootClient.CONFIG.useManualFormatting ? "ON" : "OFF"));
+                        NamedLootClient.CONFIG.markChanged();
                         this.init();
                     }).dimensions(this.width / 2 - 100, yPos, 200, 20).build());
             yPos += 26;
 
             // Fix the text format label and field positioning
             this.textFormatLabelYPos = yPos;
-            this.addDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
+            addContentDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
                     Text.translatable("options.namedloot.text_format"),
                     this.width / 2 - 100, textFormatLabelYPos, 0xFFFFFF));
             yPos += 15;
@@ -365,7 +449,7 @@ public class NamedLootModMenu implements ModMenuApi {
             // Format description if manual formatting is enabled
             this.formatDescriptionYPos = yPos;
             if (NamedLootClient.CONFIG.useManualFormatting) {
-                this.addDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
+                addContentDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
                         Text.translatable("options.namedloot.format_description").formatted(Formatting.GRAY),
                         this.width / 2 - 100, formatDescriptionYPos, 0xFFFFFF));
             }
@@ -377,14 +461,18 @@ public class NamedLootModMenu implements ModMenuApi {
                     200, 20, Text.literal(""));
             formatField.setMaxLength(100);
             formatField.setText(NamedLootClient.CONFIG.textFormat);
-            formatField.setChangedListener(text -> NamedLootClient.CONFIG.textFormat = text);
-            this.addDrawableChild(formatField);
+            formatField.setChangedListener(text -> {
+                NamedLootClient.CONFIG.textFormat = text;
+                NamedLootClient.CONFIG.markChanged();
+            });
+            addContentWidget(formatField);
 
             // Reset format button
-            this.addDrawableChild(ButtonWidget.builder(
+            addContentWidget(ButtonWidget.builder(
                             Text.translatable("options.namedloot.reset"), button -> {
                                 NamedLootClient.CONFIG.textFormat = "{name} x{count}";
                                 formatField.setText("{name} x{count}");
+                                NamedLootClient.CONFIG.markChanged();
                             }).dimensions(this.width / 2 + 105, yPos, 40, 20)
                     .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.reset_format")))
                     .build());
@@ -392,11 +480,7 @@ public class NamedLootModMenu implements ModMenuApi {
 
             // If manual formatting is enabled, we show the color code reference
             if (NamedLootClient.CONFIG.useManualFormatting) {
-                this.addDrawable((context, mouseX, mouseY, delta) -> {
-                    // Draw color code reference
-                    renderColorCodeReference(context);
-                });
-
+                // Drawn by render() below the format field, which is already at its scrolled position
                 yPos += 170; // Add space for all the color codes
             } else {
                 // ==========================================================
@@ -405,7 +489,7 @@ public class NamedLootModMenu implements ModMenuApi {
                 yPos += 15;
 
                 this.nameColorLabelYPos = yPos;
-                this.addDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
+                addContentDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
                         Text.translatable("options.namedloot.name_color"),
                         this.width / 2 - 100, nameColorLabelYPos, 0xFFFFFF));
                 yPos += 16;
@@ -416,7 +500,8 @@ public class NamedLootModMenu implements ModMenuApi {
                         NamedLootClient.CONFIG.nameBold,
                         (checkbox) -> NamedLootClient.CONFIG.nameBold = checkbox,
                         this.width / 2 - 100, yPos, 95,
-                        null
+                        null,
+                        true
                 );
 
                 addCheckbox(
@@ -424,7 +509,8 @@ public class NamedLootModMenu implements ModMenuApi {
                         NamedLootClient.CONFIG.nameItalic,
                         (checkbox) -> NamedLootClient.CONFIG.nameItalic = checkbox,
                         this.width / 2 + 5, yPos, 95,
-                        null
+                        null,
+                        true
                 );
                 yPos += 24;
 
@@ -433,7 +519,8 @@ public class NamedLootModMenu implements ModMenuApi {
                         NamedLootClient.CONFIG.nameUnderline,
                         (checkbox) -> NamedLootClient.CONFIG.nameUnderline = checkbox,
                         this.width / 2 - 100, yPos, 95,
-                        null
+                        null,
+                        true
                 );
 
                 addCheckbox(
@@ -441,7 +528,8 @@ public class NamedLootModMenu implements ModMenuApi {
                         NamedLootClient.CONFIG.nameStrikethrough,
                         (checkbox) -> NamedLootClient.CONFIG.nameStrikethrough = checkbox,
                         this.width / 2 + 5, yPos, 95,
-                        null
+                        null,
+                        true
                 );
                 yPos += 26;
 
@@ -454,7 +542,7 @@ public class NamedLootModMenu implements ModMenuApi {
                 yPos += 26;
 
                 // Reset name color button
-                this.addDrawableChild(ButtonWidget.builder(
+                addContentWidget(ButtonWidget.builder(
                                 Text.translatable("options.namedloot.reset_colors"), button -> {
                                     NamedLootClient.CONFIG.nameRed = 1.0F;
                                     NamedLootClient.CONFIG.nameGreen = 1.0F;
@@ -463,6 +551,7 @@ public class NamedLootModMenu implements ModMenuApi {
                                     NamedLootClient.CONFIG.nameItalic = false;
                                     NamedLootClient.CONFIG.nameUnderline = false;
                                     NamedLootClient.CONFIG.nameStrikethrough = false;
+                                    NamedLootClient.CONFIG.markChanged();
                                     this.init();
                                 }).dimensions(this.width / 2 - 50, yPos, 100, 20)
                         .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.reset_format")))
@@ -474,7 +563,7 @@ public class NamedLootModMenu implements ModMenuApi {
                 // ==========================================================
 
                 this.countColorLabelYPos = yPos;
-                this.addDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
+                addContentDrawable((context, mouseX, mouseY, delta) -> context.drawTextWithShadow(this.textRenderer,
                         Text.translatable("options.namedloot.count_color"),
                         this.width / 2 - 100, countColorLabelYPos, 0xFFFFFF));
                 yPos += 16;
@@ -485,7 +574,8 @@ public class NamedLootModMenu implements ModMenuApi {
                         NamedLootClient.CONFIG.countBold,
                         (checkbox) -> NamedLootClient.CONFIG.countBold = checkbox,
                         this.width / 2 - 100, yPos, 95,
-                        null
+                        null,
+                        true
                 );
 
                 addCheckbox(
@@ -493,7 +583,8 @@ public class NamedLootModMenu implements ModMenuApi {
                         NamedLootClient.CONFIG.countItalic,
                         (checkbox) -> NamedLootClient.CONFIG.countItalic = checkbox,
                         this.width / 2 + 5, yPos, 95,
-                        null
+                        null,
+                        true
                 );
                 yPos += 24;
 
@@ -502,7 +593,8 @@ public class NamedLootModMenu implements ModMenuApi {
                         NamedLootClient.CONFIG.countUnderline,
                         (checkbox) -> NamedLootClient.CONFIG.countUnderline = checkbox,
                         this.width / 2 - 100, yPos, 95,
-                        null
+                        null,
+                        true
                 );
 
                 addCheckbox(
@@ -510,7 +602,8 @@ public class NamedLootModMenu implements ModMenuApi {
                         NamedLootClient.CONFIG.countStrikethrough,
                         (checkbox) -> NamedLootClient.CONFIG.countStrikethrough = checkbox,
                         this.width / 2 + 5, yPos, 95,
-                        null
+                        null,
+                        true
                 );
                 yPos += 26;
 
@@ -523,7 +616,7 @@ public class NamedLootModMenu implements ModMenuApi {
                 yPos += 26;
 
                 // Reset count color button
-                this.addDrawableChild(ButtonWidget.builder(
+                addContentWidget(ButtonWidget.builder(
                                 Text.translatable("options.namedloot.reset_colors"), button -> {
                                     NamedLootClient.CONFIG.countRed = 1.0F;
                                     NamedLootClient.CONFIG.countGreen = 1.0F;
@@ -532,6 +625,7 @@ public class NamedLootModMenu implements ModMenuApi {
                                     NamedLootClient.CONFIG.countItalic = false;
                                     NamedLootClient.CONFIG.countUnderline = false;
                                     NamedLootClient.CONFIG.countStrikethrough = false;
+                                    NamedLootClient.CONFIG.markChanged();
                                     this.init();
                                 }).dimensions(this.width / 2 - 50, yPos, 100, 20)
                         .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.reset_format")))
@@ -540,7 +634,7 @@ public class NamedLootModMenu implements ModMenuApi {
             }
 
             // Save and close button with clearer text
-            this.addDrawableChild(ButtonWidget.builder(
+            addContentWidget(ButtonWidget.builder(
                     Text.translatable("options.namedloot.save_and_close"), button -> {
                         // Save config and return to previous screen
                         NamedLootClient.saveConfig();
@@ -554,11 +648,13 @@ public class NamedLootModMenu implements ModMenuApi {
 
             // Calculate final content height based on actual rendered positions
             int finalYPos = yPos;
-            this.contentHeight = finalYPos - (80 + scrollOffset);
+            this.contentHeight = finalYPos - 80;
         }
 
+        // Laid out at scroll offset 0, see addContentWidget(). Rule groups only get
+        // widgets once they scroll into view, see scrollContent()
         private void renderAdvancedTab() {
-            int yPos = 80 + scrollOffset;
+            int yPos = 80;
 
             // ==========================================================
             // ADVANCED RULES SECTION
@@ -567,25 +663,70 @@ public class NamedLootModMenu implements ModMenuApi {
             yPos += 20;
 
             // Add Rules Button (adds a new rule group)
-            this.addDrawableChild(ButtonWidget.builder(
+            addContentWidget(ButtonWidget.builder(
                             Text.translatable("options.namedloot.add_rules"), button -> {
                                 NamedLootClient.CONFIG.advancedRules.add(new NamedLootConfig.AdvancedRule());
+                                NamedLootClient.CONFIG.markChanged();
                                 this.init();
                             }).dimensions(this.width / 2 - 50, yPos, 100, 20)
                     .tooltip(Tooltip.of(Text.translatable("options.namedloot.add_rules")))
                     .build());
             yPos += 30;
 
+            // Search box, filters the rule groups below while typing
+            if (!NamedLootClient.CONFIG.advancedRules.isEmpty()) {
+                TextFieldWidget searchField = new TextFieldWidget(this.textRenderer, this.width / 2 - 100, yPos, 200, 20,
+                        Text.translatable("options.namedloot.search_rules"));
+                searchField.setMaxLength(256);
+                searchField.setText(ruleSearchQuery);
+                searchField.setPlaceholder(Text.translatable("options.namedloot.search_rules").formatted(Formatting.GRAY));
+                searchField.setTooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.search_rules")));
+                searchField.setChangedListener(text -> {
+                    // Only the rule groups are laid out again, the search box keeps focus and cursor
+                    ruleSearchQuery = text;
+                    layOutRuleRows();
+                    validateScrollOffset();
+                    scrollContent();
+                });
+                addContentWidget(searchField);
+                yPos += 30;
+            }
+
+            ruleRowsTop = yPos;
+            layOutRuleRows();
+        }
 
+        // The rule groups matching the search and everything below them. Runs again on every
+        // search change; groups only get widgets once they scroll into view, see scrollContent()
+        private void layOutRuleRows() {
+            for (int i = 0; i < ruleRows.size(); i++) {
+                if (ruleRows.get(i).built) {
+                    releaseGroup(ruleRows.get(i));
+                }
+            }
+            ruleRows.clear();
+            releaseGroup(ruleFooter);
+
+            building = ruleFooter;
+            try {
+                addRuleRowsAndFooter(ruleRowsTop);
+            } finally {
+                building = null;
+            }
+        }
+
+        private void addRuleRowsAndFooter(int yPos) {
             if (NamedLootClient.CONFIG.advancedRules.isEmpty()) {
                 final int noRulesY = yPos;
-                this.addDrawable((context, mouseX, mouseY, delta) -> {
+                addContentDrawable((context, mouseX, mouseY, delta) -> {
                     Text helpText = Text.translatable("options.namedloot.no_rules_help").formatted(Formatting.GRAY, Formatting.ITALIC);
                     context.drawCenteredTextWithShadow(this.textRenderer, helpText,
                             this.width / 2, noRulesY, 0xFFFFFF);
                 });
                 yPos += 40;
             } else {
+                ruleSearch.begin(ruleSearchQuery, NamedLootClient.CONFIG);
+                List<RuleRow> matchingRows = new ArrayList<>();
                 int ruleDisplayIndex = 1;
                 int configRuleIndex = 0;
                 while (configRuleIndex < NamedLootClient.CONFIG.advancedRules.size()) {
@@ -607,182 +748,35 @@ public class NamedLootModMenu implements ModMenuApi {
                         nextIndex++;
                     }
 
-                    // --- Render Rule Header and Remove Button for the entire group ---
-                    final int headerY = yPos;
-                    int finalRuleDisplayIndex = ruleDisplayIndex;
-                    this.addDrawable((context, mouseX, mouseY, delta) -> {
-                        Text ruleTitle = Text.literal("Rule " + finalRuleDisplayIndex).formatted(Formatting.BOLD);
-                        context.drawTextWithShadow(this.textRenderer, ruleTitle,
-                                this.width / 2 - 100, headerY, SECTION_TITLE_COLOR);
-                    });
-
-                    this.addDrawableChild(ButtonWidget.builder(
-                            Text.literal("−").formatted(Formatting.RED), btn -> {
-                                NamedLootClient.CONFIG.advancedRules.removeAll(groupConditions);
-                                this.init();
-                            }).dimensions(this.width / 2 + 80, yPos, 20, 20).build());
-                    yPos += 25;
-
-                    // Enable/Disable Toggle for this specific rule group
-                    addCheckbox(
-                            "options.namedloot.rule_enabled",
-                            firstRuleInGroup.ruleEnabled,
-                            (checkbox) -> firstRuleInGroup.ruleEnabled = checkbox,
-                            this.width / 2 - 100, yPos, 200,
-                            "options.namedloot.tooltip.rule_enabled"
-                    );
-                    yPos += 24;
-
-                    // --- Loop through and render each condition in the group ---
-                    for (int i = 0; i < groupConditions.size(); i++) {
-                        final int conditionIndexInConfig = groupStartIndex + i;
-                        final NamedLootConfig.AdvancedRule conditionRule = groupConditions.get(i);
-
-                        if (i > 0) {
-                            final int andY = yPos;
-                            this.addDrawable((context, mouseX, mouseY, delta) ->
-                                    context.drawCenteredTextWithShadow(this.textRenderer,
-                                            Text.literal("AND").formatted(Formatting.YELLOW, Formatting.BOLD),
-                                            this.width / 2, andY, 0xFFFFFF));
-                            yPos += 15;
-                        }
-
-                        final int conditionLabelY = yPos;
-                        this.addDrawable((context, mouseX, mouseY, delta) ->
-                                context.drawTextWithShadow(this.textRenderer,
-                                        Text.translatable("options.namedloot.condition"),
-                                        this.width / 2 - 100, conditionLabelY, 0xFFFFFF));
-                        yPos += 16;
-
-                        // Condition toggle buttons
-                        int buttonWidth = 45;
-                        int buttonSpacing = 5;
-                        int startX = this.width / 2 - 100;
-
-                        ButtonWidget containsButton = ButtonWidget.builder(
-                                        Text.literal("Contains"), button -> {
-                                            conditionRule.condition = "Contains";
-                                            this.init();
-                                        }).dimensions(startX, yPos, buttonWidth, 20)
-                                .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.name_match")))
-                                .build();
-
-                        ButtonWidget countLessButton = ButtonWidget.builder(
-                                        Text.literal("Count <"), button -> {
-                                            conditionRule.condition = "Count <";
-                                            this.init();
-                                        }).dimensions(startX + (buttonWidth + buttonSpacing), yPos, buttonWidth, 20)
-                                .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.count_less")))
-                                .build();
-
-                        ButtonWidget countMoreButton = ButtonWidget.builder(
-                                        Text.literal("Count >"), button -> {
-                                            conditionRule.condition = "Count >";
-                                            this.init();
-                                        }).dimensions(startX + (buttonWidth + buttonSpacing) * 2, yPos, buttonWidth, 20)
-                                .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.count_more")))
-                                .build();
-
-                        ButtonWidget countEqualButton = ButtonWidget.builder(
-                                        Text.literal("Count ="), button -> {
-                                            conditionRule.condition = "Count =";
-                                            this.init();
-                                        }).dimensions(startX + (buttonWidth + buttonSpacing) * 3, yPos, buttonWidth, 20)
-                                .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.count_equal")))
-                                .build();
-
-                        containsButton.active = !"Contains".equals(conditionRule.condition);
-                        countLessButton.active = !"Count <".equals(conditionRule.condition);
-                        countMoreButton.active = !"Count >".equals(conditionRule.condition);
-                        countEqualButton.active = !"Count =".equals(conditionRule.condition);
-
-                        this.addDrawableChild(containsButton);
-                        this.addDrawableChild(countLessButton);
-                        this.addDrawableChild(countMoreButton);
-                        this.addDrawableChild(countEqualButton);
-                        yPos += 26;
-
-                        // Value label, text field, and the new remove condition button
-                        final int valueLabelY = yPos;
-                        this.addDrawable((context, mouseX, mouseY, delta) ->
-                                context.drawTextWithShadow(this.textRenderer,
-                                        Text.translatable("options.namedloot.rule_value"),
-                                        this.width / 2 - 100, valueLabelY, 0xFFFFFF));
-                        yPos += 16;
-
-                        TextFieldWidget valueField = new TextFieldWidget(this.textRenderer, this.width / 2 - 100, yPos, 180, 20, Text.literal(""));
-                        valueField.setText(conditionRule.value);
-                        valueField.setChangedListener(text -> conditionRule.value = text);
-                        this.addDrawableChild(valueField);
-
-                        // New remove condition ('-') button
-                        this.addDrawableChild(ButtonWidget.builder(
-                                        Text.literal("−").formatted(Formatting.RED), button -> {
-                                            NamedLootClient.CONFIG.advancedRules.remove(conditionIndexInConfig);
-                                            // If the first rule in a group is deleted, promote the next one to be the new "leader"
-                                            if (conditionIndexInConfig == groupStartIndex && groupConditions.size() > 1) {
-                                                NamedLootClient.CONFIG.advancedRules.get(groupStartIndex).textFormat = firstRuleInGroup.textFormat;
-                                            }
-                                            this.init();
-                                        }).dimensions(this.width / 2 + 85, yPos, 20, 20)
-                                .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.remove_condition")))
-                                .build());
-                        yPos += 26;
-                    }
-
-                    // --- New Add Condition ('+') Button ---
-                    this.addDrawableChild(ButtonWidget.builder(
-                                    Text.translatable("options.namedloot.add_condition").formatted(Formatting.GREEN), button -> {
-                                        int insertAtIndex = groupStartIndex + groupConditions.size();
-                                        NamedLootConfig.AdvancedRule newCondition = new NamedLootConfig.AdvancedRule();
-                                        newCondition.textFormat = ""; // Empty format marks it as a chained condition
-                                        NamedLootClient.CONFIG.advancedRules.add(insertAtIndex, newCondition);
-                                        this.init();
-                                    }).dimensions(this.width / 2 - 100, yPos, 205, 20)
-                            .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.add_condition")))
-                            .build());
-                    yPos += 26;
-
-
-                    // --- Shared Format Field for the Rule Group ---
-                    final int formatLabelY = yPos;
-                    this.addDrawable((context, mouseX, mouseY, delta) ->
-                            context.drawTextWithShadow(this.textRenderer,
-                                    Text.translatable("options.namedloot.rule_format"),
-                                    this.width / 2 - 100, formatLabelY, 0xFFFFFF));
-                    yPos += 16;
-
-                    TextFieldWidget formatField = new TextFieldWidget(this.textRenderer, this.width / 2 - 100, yPos, 200, 20, Text.literal(""));
-                    formatField.setText(firstRuleInGroup.textFormat);
-                    formatField.setChangedListener(text -> NamedLootClient.CONFIG.advancedRules.get(groupStartIndex).textFormat = text);
-                    this.addDrawableChild(formatField);
-
-                    this.addDrawableChild(ButtonWidget.builder(
-                                    Text.translatable("options.namedloot.reset"), button -> {
-                                        NamedLootClient.CONFIG.advancedRules.get(groupStartIndex).textFormat = "{name} x{count}";
-                                        this.init();
-                                    }).dimensions(this.width / 2 + 105, yPos, 40, 20)
-                            .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.reset_format")))
-                            .build());
-                    yPos += 26;
-
-                    // Rule separator line
-                    if (configRuleIndex + groupConditions.size() < NamedLootClient.CONFIG.advancedRules.size()) {
-                        final int separatorY = yPos;
-                        this.addDrawable((context, mouseX, mouseY, delta) -> context.fill(this.width / 2 - 80, separatorY,
-                                this.width / 2 + 80, separatorY + 1, 0x33FFFFFF));
-                        yPos += 10;
+                    // Groups keep their number while filtered, so it still matches the unfiltered list
+                    if (ruleSearch.matches(groupConditions)) {
+                        matchingRows.add(new RuleRow(groupStartIndex, groupConditions, ruleDisplayIndex));
                     }
-                    yPos += 10;
 
                     // Update loop counters
                     configRuleIndex += groupConditions.size();
                     ruleDisplayIndex++;
                 }
+
+                if (matchingRows.isEmpty()) {
+                    final int noMatchesY = yPos;
+                    addContentDrawable((context, mouseX, mouseY, delta) -> {
+                        Text helpText = Text.translatable("options.namedloot.no_matching_rules").formatted(Formatting.GRAY, Formatting.ITALIC);
+                        context.drawCenteredTextWithShadow(this.textRenderer, helpText,
+                                this.width / 2, noMatchesY, 0xFFFFFF);
+                    });
+                    yPos += 40;
+                }
+                for (int i = 0; i < matchingRows.size(); i++) {
+                    RuleRow row = matchingRows.get(i);
+                    row.layOut(yPos, i == matchingRows.size() - 1);
+                    ruleRows.add(row);
+                    yPos += row.height;
+                }
             }
 
             // Save and close button (consistent with default tab)
-            this.addDrawableChild(ButtonWidget.builder(
+            addContentWidget(ButtonWidget.builder(
                     Text.translatable("options.namedloot.save_and_close"), button -> {
                         NamedLootClient.saveConfig();
                         assert this.client != null;
@@ -805,11 +799,11 @@ public class NamedLootModMenu implements ModMenuApi {
             if (needsInlineColorReference) {
                 // Reference ditempatkan inline dengan jarak ekstra
                 int inlineY = yPos + extraTopPadding;
-                this.addDrawable((context, mouseX, mouseY, delta) -> renderColorCodeContentAt(context, this.width / 2 - 100, this.width / 2 + 20, inlineY, false));
+                addContentDrawable((context, mouseX, mouseY, delta) -> renderColorCodeContentAt(context, this.width / 2 - 100, this.width / 2 + 20, inlineY, false));
                 //yPos += extraTopPadding + referenceBoxHeight;
-                computedContentHeight = finalYPos - (80 + scrollOffset) + 190;
+                computedContentHeight = finalYPos - 80 + 190;
             }else{
-                computedContentHeight = finalYPos - (80 + scrollOffset);
+                computedContentHeight = finalYPos - 80;
             }
 
 
@@ -817,10 +811,326 @@ public class NamedLootModMenu implements ModMenuApi {
         }
 
 
+
+        // Widgets and labels of one rule group, created when it scrolls into view
+        private void addRuleGroup(RuleRow row) {
+            final int groupStartIndex = row.groupStartIndex;
+            final List<NamedLootConfig.AdvancedRule> groupConditions = row.conditions;
+            final NamedLootConfig.AdvancedRule firstRuleInGroup = groupConditions.get(0);
+            int yPos = row.top;
+
+            // --- Render Rule Header and Remove Button for the entire group ---
+            final int headerY = yPos;
+            int finalRuleDisplayIndex = row.displayIndex;
+            addContentDrawable((context, mouseX, mouseY, delta) -> {
+                Text ruleTitle = Text.literal("Rule " + finalRuleDisplayIndex).formatted(Formatting.BOLD);
+                context.drawTextWithShadow(this.textRenderer, ruleTitle,
+                        this.width / 2 - 100, headerY, SECTION_TITLE_COLOR);
+            });
+
+            addContentWidget(ButtonWidget.builder(
+                    Text.literal("−").formatted(Formatting.RED), btn -> {
+                        NamedLootClient.CONFIG.advancedRules.removeAll(groupConditions);
+                        NamedLootClient.CONFIG.markChanged();
+                        this.init();
+                    }).dimensions(this.width / 2 + 80, yPos, 20, 20).build());
+            yPos += 25;
+
+            // Enable/Disable Toggle for this specific rule group
+            addCheckbox(
+                    "options.namedloot.rule_enabled",
+                    firstRuleInGroup.ruleEnabled,
+                    (checkbox) -> firstRuleInGroup.ruleEnabled = checkbox,
+                    this.width / 2 - 100, yPos, 200,
+                    "options.namedloot.tooltip.rule_enabled",
+                    true
+            );
+            yPos += 24;
+
+            // --- Loop through and render each condition in the group ---
+            for (int i = 0; i < groupConditions.size(); i++) {
+                final int conditionIndexInConfig = groupStartIndex + i;
+                final NamedLootConfig.AdvancedRule conditionRule = groupConditions.get(i);
+
+                if (i > 0) {
+                    final int andY = yPos;
+                    addContentDrawable((context, mouseX, mouseY, delta) ->
+                            context.drawCenteredTextWithShadow(this.textRenderer,
+                                    Text.literal("AND").formatted(Formatting.YELLOW, Formatting.BOLD),
+                                    this.width / 2, andY, 0xFFFFFF));
+                    yPos += 15;
+                }
+
+                final int conditionLabelY = yPos;
+                addContentDrawable((context, mouseX, mouseY, delta) ->
+                        context.drawTextWithShadow(this.textRenderer,
+                                Text.translatable("options.namedloot.condition"),
+                                this.width / 2 - 100, conditionLabelY, 0xFFFFFF));
+                yPos += 16;
+
+                // Condition toggle buttons
+                int buttonWidth = 45;
+                int buttonSpacing = 5;
+                int startX = this.width / 2 - 100;
+
+                ButtonWidget containsButton = ButtonWidget.builder(
+                                Text.literal("Contains"), button -> {
+                                    conditionRule.condition = "Contains";
+                                    NamedLootClient.CONFIG.markChanged();
+                                    this.init();
+                                }).dimensions(startX, yPos, buttonWidth, 20)
+                        .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.name_match")))
+                        .build();
+
+                ButtonWidget countLessButton = ButtonWidget.builder(
+                                Text.literal("Count <"), button -> {
+                                    conditionRule.condition = "Count <";
+                                    NamedLootClient.CONFIG.markChanged();
+                                    this.init();
+                                }).dimensions(startX + (buttonWidth + buttonSpacing), yPos, buttonWidth, 20)
+                        .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.count_less")))
+                        .build();
+
+                ButtonWidget countMoreButton = ButtonWidget.builder(
+                                Text.literal("Count >"), button -> {
+                                    conditionRule.condition = "Count >";
+                                    NamedLootClient.CONFIG.markChanged();
+                                    this.init();
+                                }).dimensions(startX + (buttonWidth + buttonSpacing) * 2, yPos, buttonWidth, 20)
+                        .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.count_more")))
+                        .build();
+
+                ButtonWidget countEqualButton = ButtonWidget.builder(
+                                Text.literal("Count ="), button -> {
+                                    conditionRule.condition = "Count =";
+                                    NamedLootClient.CONFIG.markChanged();
+                                    this.init();
+                                }).dimensions(startX + (buttonWidth + buttonSpacing) * 3, yPos, buttonWidth, 20)
+                        .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.count_equal")))
+                        .build();
+
+                containsButton.active = !"Contains".equals(conditionRule.condition);
+                countLessButton.active = !"Count <".equals(conditionRule.condition);
+                countMoreButton.active = !"Count >".equals(conditionRule.condition);
+                countEqualButton.active = !"Count =".equals(conditionRule.condition);
+
+                addContentWidget(containsButton);
+                addContentWidget(countLessButton);
+                addContentWidget(countMoreButton);
+                addContentWidget(countEqualButton);
+                yPos += 24;
+
+                // Conditions on the item itself, independent of the client language
+                ButtonWidget itemIdButton = ButtonWidget.builder(
+                                Text.literal("Item ID"), button -> {
+                                    conditionRule.condition = "Item ID";
+                                    NamedLootClient.CONFIG.markChanged();
+                                    this.init();
+                                }).dimensions(startX, yPos, buttonWidth, 20)
+                        .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.item_id")))
+                        .build();
+
+                ButtonWidget itemTagButton = ButtonWidget.builder(
+                                Text.literal("Tag"), button -> {
+                                    conditionRule.condition = "Item Tag";
+                                    NamedLootClient.CONFIG.markChanged();
+                                    this.init();
+                                }).dimensions(startX + (buttonWidth + buttonSpacing), yPos, buttonWidth, 20)
+                        .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.item_tag")))
+                        .build();
+
+                ButtonWidget rarityButton = ButtonWidget.builder(
+                                Text.literal("Rarity"), button -> {
+                                    conditionRule.condition = "Rarity";
+                                    NamedLootClient.CONFIG.markChanged();
+                                    this.init();
+                                }).dimensions(startX + (buttonWidth + buttonSpacing) * 2, yPos, buttonWidth, 20)
+                        .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.rarity")))
+                        .build();
+
+                itemIdButton.active = !"Item ID".equals(conditionRule.condition);
+                itemTagButton.active = !"Item Tag".equals(conditionRule.condition);
+                rarityButton.active = !"Rarity".equals(conditionRule.condition);
+
+                addContentWidget(itemIdButton);
+                addContentWidget(itemTagButton);
+                addContentWidget(rarityButton);
+                yPos += 26;
+
+                // Value label, text field, and the new remove condition button
+                final int valueLabelY = yPos;
+                addContentDrawable((context, mouseX, mouseY, delta) ->
+                        context.drawTextWithShadow(this.textRenderer,
+                                Text.translatable("options.namedloot.rule_value"),
+                                this.width / 2 - 100, valueLabelY, 0xFFFFFF));
+                yPos += 16;
+
+                TextFieldWidget valueField = new TextFieldWidget(this.textRenderer, this.width / 2 - 100, yPos, 180, 20, Text.literal(""));
+                valueField.setText(conditionRule.value);
+                // The condition may have just changed, so check the value against it again
+                conditionRule.validate();
+                updateValidity(valueField, conditionRule);
+                valueField.setChangedListener(text -> {
+                    conditionRule.value = text;
+                    conditionRule.validate();
+                    updateValidity(valueField, conditionRule);
+                    NamedLootClient.CONFIG.markChanged();
+                });
+                addContentWidget(valueField);
+
+                // New remove condition ('-') button
+                addContentWidget(ButtonWidget.builder(
+                                Text.literal("−").formatted(Formatting.RED), button -> {
+                                    NamedLootClient.CONFIG.advancedRules.remove(conditionIndexInConfig);
+                                    // If the first rule in a group is deleted, promote the next one to be the new "leader"
+                                    if (conditionIndexInConfig == groupStartIndex && groupConditions.size() > 1) {
+                                        NamedLootClient.CONFIG.advancedRules.get(groupStartIndex).textFormat = firstRuleInGroup.textFormat;
+                                    }
+                                    NamedLootClient.CONFIG.markChanged();
+                                    this.init();
+                                }).dimensions(this.width / 2 + 85, yPos, 20, 20)
+                        .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.remove_condition")))
+                        .build());
+                yPos += 26;
+            }
+
+            // --- New Add Condition ('+') Button ---
+            addContentWidget(ButtonWidget.builder(
+                            Text.translatable("options.namedloot.add_condition").formatted(Formatting.GREEN), button -> {
+                                int insertAtIndex = groupStartIndex + groupConditions.size();
+                                NamedLootConfig.AdvancedRule newCondition = new NamedLootConfig.AdvancedRule();
+                                newCondition.textFormat = ""; // Empty format marks it as a chained condition
+                                NamedLootClient.CONFIG.advancedRules.add(insertAtIndex, newCondition);
+                                NamedLootClient.CONFIG.markChanged();
+                                this.init();
+                            }).dimensions(this.width / 2 - 100, yPos, 205, 20)
+                    .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.add_condition")))
+                    .build());
+            yPos += 26;
+
+
+            // --- Shared Format Field for the Rule Group ---
+            final int formatLabelY = yPos;
+            addContentDrawable((context, mouseX, mouseY, delta) ->
+                    context.drawTextWithShadow(this.textRenderer,
+                            Text.translatable("options.namedloot.rule_format"),
+                            this.width / 2 - 100, formatLabelY, 0xFFFFFF));
+            yPos += 16;
+
+            TextFieldWidget formatField = new TextFieldWidget(this.textRenderer, this.width / 2 - 100, yPos, 200, 20, Text.literal(""));
+            formatField.setText(firstRuleInGroup.textFormat);
+            formatField.setChangedListener(text -> {
+                NamedLootClient.CONFIG.advancedRules.get(groupStartIndex).textFormat = text;
+                NamedLootClient.CONFIG.markChanged();
+            });
+            addContentWidget(formatField);
+
+            addContentWidget(ButtonWidget.builder(
+                            Text.translatable("options.namedloot.reset"), button -> {
+                                NamedLootClient.CONFIG.advancedRules.get(groupStartIndex).textFormat = "{name} x{count}";
+                                NamedLootClient.CONFIG.markChanged();
+                                this.init();
+                            }).dimensions(this.width / 2 + 105, yPos, 40, 20)
+                    .tooltip(Tooltip.of(Text.translatable("options.namedloot.tooltip.reset_format")))
+                    .build());
+            yPos += 26;
+
+            // Rule separator line
+            if (!row.last) {
+                final int separatorY = yPos;
+                addContentDrawable((context, mouseX, mouseY, delta) -> context.fill(this.width / 2 - 80, separatorY,
+                        this.width / 2 + 80, separatorY + 1, 0x33FFFFFF));
+            }
+        }
+
+        // Height of a rule group, must match the spacing in addRuleGroup()
+        private static int ruleGroupHeight(int conditionCount, boolean last) {
+            int height = 25 + 24; // Header, enabled toggle
+            height += conditionCount * (16 + 24 + 26 + 16 + 26); // Label, two rows of condition buttons, value
+            height += (conditionCount - 1) * 15; // "AND" between conditions
+            height += 26 + 16 + 26; // Add condition, format
+            height += last ? 10 : 20; // Separator
+            return height;
+        }
+
+        // Moves the content to scrollOffset without a rebuild, so focus and cursors survive.
+        // Rule groups keep their widgets while visible, get them when scrolling into view
+        // and drop them when leaving. Indexed loops, this runs for every drag event
+        private void scrollContent() {
+            content.moveTo(scrollOffset);
+            ruleFooter.moveTo(scrollOffset);
+
+            int clipTop = 80;
+            int clipBottom = this.height - 25;
+            for (int i = 0; i < ruleRows.size(); i++) {
+                RuleRow row = ruleRows.get(i);
+                int top = row.top + scrollOffset;
+                boolean visible = top < clipBottom && top + row.height > clipTop;
+                if (visible && !row.built) {
+                    buildRuleRow(row);
+                } else if (!visible && row.built) {
+                    releaseGroup(row);
+                } else if (row.built) {
+                    row.moveTo(scrollOffset);
+                }
+            }
+        }
+
+        private void buildRuleRow(RuleRow row) {
+            building = row;
+            try {
+                addRuleGroup(row);
+            } finally {
+                building = null;
+            }
+            row.built = true;
+        }
+
+        // Removes the widgets of a rule group or the footer from the screen
+        private void releaseGroup(ContentGroup group) {
+            for (ContentWidget placed : group.widgets) {
+                if (this.getFocused() == placed.widget()) {
+                    this.setFocused(null);
+                }
+                this.remove(placed.widget());
+            }
+            group.clear();
+            if (group instanceof RuleRow row) {
+                row.built = false;
+            }
+        }
+
+        // Labels of the current tab, drawn shifted by the scroll offset like the widgets
+        private void renderScrolledContent(DrawContext context, int mouseX, int mouseY, float delta) {
+            context.getMatrices().push();
+            context.getMatrices().translate(0.0F, (float) scrollOffset, 0.0F);
+            int contentMouseY = mouseY - scrollOffset;
+            content.render(context, mouseX, contentMouseY, delta);
+            for (int i = 0; i < ruleRows.size(); i++) {
+                ruleRows.get(i).render(context, mouseX, contentMouseY, delta);
+            }
+            ruleFooter.render(context, mouseX, contentMouseY, delta);
+            context.getMatrices().pop();
+        }
+
+        // Adds a widget laid out at scroll offset 0 and remembers it, so scrolling
+        // can move it instead of rebuilding the screen
+        private <T extends ClickableWidget> T addContentWidget(T widget) {
+            ContentWidget placed = new ContentWidget(widget, widget.getY());
+            (building != null ? building : content).widgets.add(placed);
+            placed.moveTo(scrollOffset);
+            return this.addDrawableChild(widget);
+        }
+
+        private void addContentDrawable(Drawable drawable) {
+            (building != null ? building : content).drawables.add(drawable);
+        }
+
+
         // Helper method to draw a section header with a separator line
         private void drawSectionHeader(int yPos, String translationKey) {
             final int y = yPos;
-            this.addDrawable((context, mouseX, mouseY, delta) -> {
+            addContentDrawable((context, mouseX, mouseY, delta) -> {
                 // Draw section title
                 Text sectionTitle = Text.translatable(translationKey).formatted(Formatting.BOLD);
                 context.drawTextWithShadow(this.textRenderer, sectionTitle,
@@ -832,9 +1142,10 @@ public class NamedLootModMenu implements ModMenuApi {
             });
         }
 
-        // Helper method for adding checkboxes with consistent styling
+        // Helper method for adding checkboxes with consistent styling. changesLabels marks the config
+        // changed, which rebuilds cached labels and rules, so it is only for options that alter label text
         private void addCheckbox(String translationKey, boolean configValue, Consumer<Boolean> configSetter,
-                                 int x, int y, int width, @Nullable String tooltipKey) {
+                                 int x, int y, int width, @Nullable String tooltipKey, boolean changesLabels) {
             MutableText label = Text.empty()
                     .append(Text.literal(configValue ? "☑ " : "☐ ").formatted(Formatting.GREEN))
                     .append(Text.translatable(translationKey));
@@ -842,12 +1153,23 @@ public class NamedLootModMenu implements ModMenuApi {
             ButtonWidget checkbox = ButtonWidget.builder(label, button -> {
                         boolean newState = !configValue;
                         configSetter.accept(newState);
+                        if (changesLabels) {
+                            NamedLootClient.CONFIG.markChanged();
+                        }
                         this.init(); // refresh
                     }).dimensions(x, y, width, 20)
                     .tooltip(tooltipKey != null ? Tooltip.of(Text.translatable(tooltipKey)) : null)
                     .build();
 
-            this.addDrawableChild(checkbox);
+            addContentWidget(checkbox);
+        }
+
+        // Red text and an explanation for a rule value that can never match
+        private void updateValidity(TextFieldWidget valueField, NamedLootConfig.AdvancedRule rule) {
+            valueField.setEditableColor(rule.isInvalid() ? INVALID_VALUE_COLOR : VALID_VALUE_COLOR);
+            valueField.setTooltip(rule.isInvalid()
+                    ? Tooltip.of(Text.translatable("options.namedloot.tooltip.invalid_value", rule.condition))
+                    : null);
         }
 
         private void addNameColorSlider(int y, String type, float initialValue) {
@@ -866,10 +1188,11 @@ public class NamedLootModMenu implements ModMenuApi {
                         case "green" -> NamedLootClient.CONFIG.nameGreen = (float) this.value;
                         case "blue" -> NamedLootClient.CONFIG.nameBlue = (float) this.value;
                     }
+                    NamedLootClient.CONFIG.markChanged();
                     this.updateMessage();
                 }
             };
-            this.addDrawableChild(slider);
+            addContentWidget(slider);
         }
 
         private void addCountColorSlider(int y, String type, float initialValue) {
@@ -888,10 +1211,20 @@ public class NamedLootModMenu implements ModMenuApi {
                         case "green" -> NamedLootClient.CONFIG.countGreen = (float) this.value;
                         case "blue" -> NamedLootClient.CONFIG.countBlue = (float) this.value;
                     }
+                    NamedLootClient.CONFIG.markChanged();
                     this.updateMessage();
                 }
             };
-            this.addDrawableChild(slider);
+            addContentWidget(slider);
+        }
+
+        // Inverse of the max labels slider mapping, values between steps round down
+        private static double maxLabelsToSliderValue(int maxLabels) {
+            if (maxLabels <= 0) {
+                return 1.0;
+            }
+            int step = Math.min(Math.max(maxLabels / 8 - 1, 0), MAX_LABELS_STEPS - 1);
+            return step / (double) MAX_LABELS_STEPS;
         }
 
         // Add a new method to ensure the scrollOffset is valid based on current dimensions
@@ -924,8 +1257,7 @@ public class NamedLootModMenu implements ModMenuApi {
             scrollOffset = scrollOffset + (int)(verticalAmount * 20);
             // Validate the scroll position
             validateScrollOffset();
-            // Reinitialize with the new scroll position
-            this.init();
+            scrollContent();
             return true;
         }
 
@@ -936,8 +1268,7 @@ public class NamedLootModMenu implements ModMenuApi {
                 scrollOffset = scrollOffset - (int)deltaY;
                 // Validate the new scroll position
                 validateScrollOffset();
-                // Reinitialize all elements with the new scroll position
-                this.init();
+                scrollContent();
                 return true;
             }
             return super.mouseDragged(mouseX, mouseY, button, deltaX, deltaY);
@@ -1086,7 +1417,7 @@ public class NamedLootModMenu implements ModMenuApi {
             // Only show color previews if not using manual formatting AND in Default tab
             if (currentTab == 0 && !NamedLootClient.CONFIG.useManualFormatting) {
                 // Render name color preview with gradient for a more appealing look
-                int namePreviewY = nameColorLabelYPos + 88;
+                int namePreviewY = nameColorLabelYPos + scrollOffset + 88;
                 // Name color
                 int nameRed = (int)(NamedLootClient.CONFIG.nameRed * 255);
                 int nameGreen = (int)(NamedLootClient.CONFIG.nameGreen * 255);
@@ -1098,7 +1429,7 @@ public class NamedLootModMenu implements ModMenuApi {
                 }
 
                 // Render count color preview
-                int countPreviewY = countColorLabelYPos + 88;
+                int countPreviewY = countColorLabelYPos + scrollOffset + 88;
                 // Count color
                 int countRed = (int)(NamedLootClient.CONFIG.countRed * 255);
                 int countGreen = (int)(NamedLootClient.CONFIG.countGreen * 255);
@@ -1283,25 +1614,70 @@ public class NamedLootModMenu implements ModMenuApi {
         }
 
 
+        private record ContentWidget(ClickableWidget widget, int homeY) {
+            void moveTo(int scrollOffset) {
+                widget.setY(homeY + scrollOffset);
+            }
+        }
+
+        // Widgets and labels that scroll together
+        private static class ContentGroup {
+            final List<ContentWidget> widgets = new ArrayList<>();
+            final List<Drawable> drawables = new ArrayList<>();
+
+            void moveTo(int scrollOffset) {
+                for (int i = 0; i < widgets.size(); i++) {
+                    widgets.get(i).moveTo(scrollOffset);
+                }
+            }
+
+            void render(DrawContext context, int mouseX, int mouseY, float delta) {
+                for (int i = 0; i < drawables.size(); i++) {
+                    drawables.get(i).render(context, mouseX, mouseY, delta);
+                }
+            }
+
+            void clear() {
+                widgets.clear();
+                drawables.clear();
+            }
+        }
+
+        // One rule group of the Advanced tab, laid out up front but only given widgets while visible
+        private static final class RuleRow extends ContentGroup {
+            final int groupStartIndex;
+            final List<NamedLootConfig.AdvancedRule> conditions;
+            final int displayIndex;
+            // Last group shown, which has no separator below it
+            boolean last;
+            int top;
+            int height;
+            boolean built;
+
+            RuleRow(int groupStartIndex, List<NamedLootConfig.AdvancedRule> conditions, int displayIndex) {
+                this.groupStartIndex = groupStartIndex;
+                this.conditions = conditions;
+                this.displayIndex = displayIndex;
+            }
+
+            void layOut(int top, boolean last) {
+                this.top = top;
+                this.last = last;
+                this.height = ruleGroupHeight(conditions.size(), last);
+            }
+        }
+
         // Create a separate method for generating the preview text
         private MutableText createPreviewText() {
-            // Create example ItemStack for preview
-            ItemStack previewItem = new ItemStack(net.minecraft.item.Items.DIAMOND);
-            previewItem.setCount(64);
-
-            // Use the same text formatting methods as in WorldRenderEventHandler for consistency
-            if (NamedLootClient.CONFIG.useManualFormatting) {
-                // For manual formatting, use the same parsing method
-                return WorldRenderEventHandler.parseFormattedText(
-                        NamedLootClient.CONFIG.textFormat,
-                        previewItem,
-                        String.valueOf(previewItem.getCount()));
-            } else {
-                // For automatic coloring, use the same formatting method
-                return WorldRenderEventHandler.createAutomaticFormattedText(
-                        previewItem,
-                        String.valueOf(previewItem.getCount()));
+            // Compile only the default format here, the rule program is left to the next tick
+            NamedLootConfig config = NamedLootClient.CONFIG;
+            if (previewTemplate == null || previewGeneration != config.getGeneration()) {
+                previewTemplate = config.useManualFormatting
+                        ? FormatTemplate.manual(config.textFormat, config.overrideItemColors)
+                        : FormatTemplate.automatic(config.textFormat, config);
+                previewGeneration = config.getGeneration();
             }
+            return previewTemplate.instantiate(previewItem, String.valueOf(previewItem.getCount()));
         }
     }
 }
\ No newline at end of file
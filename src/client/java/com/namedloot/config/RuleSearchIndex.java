@@ -0,0 +1,142 @@
+package com.namedloot.config;
+
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Search over the advanced rules for the Advanced tab.
+ * <p>
+ * The searchable text of each rule (condition, value and format) is lowercased
+ * once and kept until that rule is edited. A query that only extends the
+ * previous terms, with no edit in between, re-checks just the groups that
+ * matched before, so typing stays fast with thousands of rules.
+ * <p>
+ * Terms are separated by spaces and must all be found in the group.
+ * {@code is:enabled} and {@code is:disabled} filter by the group's enabled state.
+ */
+final class RuleSearchIndex {
+    private static final String FILTER_PREFIX = "is:";
+    private static final String ENABLED_TERM = "is:enabled";
+    private static final String DISABLED_TERM = "is:disabled";
+
+    private final Reference2ObjectOpenHashMap<NamedLootConfig.AdvancedRule, Entry> entries = new Reference2ObjectOpenHashMap<>();
+
+    private String[] terms = new String[0];
+    private int generation = -1;
+    // Group leaders that matched the previous query, or null if it can't be used to narrow
+    private Set<NamedLootConfig.AdvancedRule> previousMatches;
+    private Set<NamedLootConfig.AdvancedRule> matches = new ReferenceOpenHashSet<>();
+
+    /**
+     * Starts a pass over all rule groups, followed by {@link #matches(List)} for each group.
+     */
+    void begin(String query, NamedLootConfig config) {
+        String normalized = query.trim().toLowerCase(Locale.ROOT);
+        String[] newTerms = normalized.isEmpty() ? new String[0] : normalized.split("\\s+");
+        boolean narrowing = generation == config.getGeneration() && extendsTerms(terms, newTerms);
+        previousMatches = narrowing ? matches : null;
+        matches = new ReferenceOpenHashSet<>();
+
+        this.terms = newTerms;
+        this.generation = config.getGeneration();
+
+        // Forget rules that were removed since the last pass
+        if (entries.size() > config.advancedRules.size()) {
+            entries.keySet().retainAll(new ReferenceOpenHashSet<>(config.advancedRules));
+        }
+    }
+
+    /**
+     * Whether everything matching {@code next} also matched {@code previous}: the
+     * previous terms come first and unchanged, except that the last one may have been
+     * typed further. Filters are never narrowed from, while typing "is:disabled" the
+     * partial "is:d" is plain text that hardly anything contains.
+     */
+    private static boolean extendsTerms(String[] previous, String[] next) {
+        if (previous.length == 0 || next.length < previous.length) {
+            return false;
+        }
+        for (String term : next) {
+            if (term.startsWith(FILTER_PREFIX)) {
+                return false;
+            }
+        }
+        int last = previous.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (!previous[i].equals(next[i])) {
+                return false;
+            }
+        }
+        return next[last].startsWith(previous[last]);
+    }
+
+    /**
+     * Whether the group (leader first, then its chained conditions) matches the
+     * query of the current pass.
+     */
+    boolean matches(List<NamedLootConfig.AdvancedRule> group) {
+        if (terms.length == 0) {
+            return true;
+        }
+        NamedLootConfig.AdvancedRule leader = group.get(0);
+        if (previousMatches != null && !previousMatches.contains(leader)) {
+            return false;
+        }
+
+        for (String term : terms) {
+            if (!matchesTerm(group, term)) {
+                return false;
+            }
+        }
+        matches.add(leader);
+        return true;
+    }
+
+    private boolean matchesTerm(List<NamedLootConfig.AdvancedRule> group, String term) {
+        if (term.equals(ENABLED_TERM)) {
+            return group.get(0).ruleEnabled;
+        }
+        if (term.equals(DISABLED_TERM)) {
+            return !group.get(0).ruleEnabled;
+        }
+        for (NamedLootConfig.AdvancedRule rule : group) {
+            if (textOf(rule).contains(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String textOf(NamedLootConfig.AdvancedRule rule) {
+        Entry entry = entries.get(rule);
+        if (entry == null || !entry.isCurrent(rule)) {
+            entry = new Entry(rule);
+            entries.put(rule, entry);
+        }
+        return entry.text;
+    }
+
+    // Lowercased text of one rule, with the field values it was made from
+    private static final class Entry {
+        final String condition;
+        final String value;
+        final String textFormat;
+        final String text;
+
+        Entry(NamedLootConfig.AdvancedRule rule) {
+            this.condition = rule.condition;
+            this.value = rule.value;
+            this.textFormat = rule.textFormat;
+            this.text = (condition + '\n' + value + '\n' + textFormat).toLowerCase(Locale.ROOT);
+        }
+
+        // Edits assign new strings, so comparing references is enough to notice them
+        boolean isCurrent(NamedLootConfig.AdvancedRule rule) {
+            return rule.condition == condition && rule.value == value && rule.textFormat == textFormat;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.namedloot.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Collecting the item entities to label for one tick: the tracker query plus
+ * the distance and occlusion filters.
+ */
+@Name("namedloot.CandidateQuery")
+@Label("Candidate Query")
+@Category("NamedLoot")
+@Description("Item entity query and filtering on the client tick")
+@StackTrace(false)
+public class CandidateQueryEvent extends Event {
+    @Label("Scanned")
+    @Description("Item entities returned by the tracker")
+    public int scanned;
+
+    @Label("Candidates")
+    @Description("Item entities passed on to the label worker")
+    public int candidates;
+}
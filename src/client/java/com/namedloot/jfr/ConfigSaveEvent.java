@@ -0,0 +1,24 @@
+package com.namedloot.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Writing the config file on the config writer thread.
+ */
+@Name("namedloot.ConfigSave")
+@Label("Config Save")
+@Category("NamedLoot")
+@Description("Serializing and atomically replacing the config file")
+@StackTrace(false)
+public class ConfigSaveEvent extends Event {
+    @Label("Advanced Rules")
+    public int advancedRules;
+
+    @Label("Success")
+    public boolean success;
+}
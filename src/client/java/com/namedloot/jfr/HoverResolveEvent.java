@@ -0,0 +1,25 @@
+package com.namedloot.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Finding the item the player is looking at.
+ */
+@Name("namedloot.HoverResolve")
+@Label("Hover Resolution")
+@Category("NamedLoot")
+@Description("Look ray against tracked items and the block check for the nearest hit")
+@StackTrace(false)
+public class HoverResolveEvent extends Event {
+    @Label("Tested")
+    @Description("Items tested against the look ray")
+    public int tested;
+
+    @Label("Hit")
+    public boolean hit;
+}
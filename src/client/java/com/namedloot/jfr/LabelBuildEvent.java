@@ -0,0 +1,39 @@
+package com.namedloot.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One snapshot built by the label worker. Rule matching and formatting are
+ * interleaved per stack, so their shares are reported as timespans.
+ */
+@Name("namedloot.LabelBuild")
+@Label("Label Build")
+@Category("NamedLoot")
+@Description("Rule matching and formatting of one label snapshot on the worker thread")
+@StackTrace(false)
+public class LabelBuildEvent extends Event {
+    @Label("Candidates")
+    public int candidates;
+
+    @Label("Rules Evaluated")
+    @Description("Stacks that missed the label cache and went through rule matching")
+    public int rulesEvaluated;
+
+    @Label("Labels")
+    @Description("Labels in the snapshot, hidden ones excluded")
+    public int labels;
+
+    @Label("Rule Matching Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long matchTime;
+
+    @Label("Formatting Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long formatTime;
+}
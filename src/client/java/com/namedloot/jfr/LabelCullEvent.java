@@ -0,0 +1,27 @@
+package com.namedloot.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Per-frame filtering of the snapshot against the view and the label budget.
+ */
+@Name("namedloot.LabelCull")
+@Label("Label Culling")
+@Category("NamedLoot")
+@Description("Frustum culling and nearest-first selection of the labels to draw")
+@StackTrace(false)
+public class LabelCullEvent extends Event {
+    @Label("Candidates")
+    public int candidates;
+
+    @Label("Culled")
+    public int culled;
+
+    @Label("Selected")
+    public int selected;
+}
@@ -0,0 +1,21 @@
+package com.namedloot.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Laying out the selected labels and submitting their quads and text.
+ */
+@Name("namedloot.LabelDraw")
+@Label("Label Draw Submission")
+@Category("NamedLoot")
+@Description("Layout and vertex submission of the labels drawn this frame")
+@StackTrace(false)
+public class LabelDrawEvent extends Event {
+    @Label("Labels Drawn")
+    public int drawn;
+}
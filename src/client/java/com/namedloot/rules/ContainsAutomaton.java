@@ -0,0 +1,170 @@
+package com.namedloot.rules;
+
+import it.unimi.dsi.fastutil.chars.Char2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over the values of all "Contains" conditions, so a
+ * single pass over an item name finds every value it contains, however many
+ * rules there are.
+ * <p>
+ * Patterns are expected to be lowercase and distinct; each gets the id it
+ * was added with. Immutable once built and safe to share between threads.
+ */
+final class ContainsAutomaton {
+    static final ContainsAutomaton EMPTY = new Builder().build();
+
+    // Per node: outgoing characters (sorted) and the node each one leads to
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    // Longest proper suffix of the node that is also in the trie
+    private final int[] fail;
+    // Pattern ending exactly at the node, or -1
+    private final int[] patternAt;
+    // Nearest node on the fail chain that ends a pattern, or -1
+    private final int[] outputLink;
+    private final int patternCount;
+
+    private ContainsAutomaton(char[][] edgeChars, int[][] edgeTargets, int[] fail, int[] patternAt,
+                              int[] outputLink, int patternCount) {
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.patternAt = patternAt;
+        this.outputLink = outputLink;
+        this.patternCount = patternCount;
+    }
+
+    boolean isEmpty() {
+        return patternCount == 0;
+    }
+
+    /**
+     * Returns a bit set (one bit per pattern id) of the patterns found in {@code text}.
+     */
+    long[] findAll(String text) {
+        long[] found = new long[(patternCount + 63) >>> 6];
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = step(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = Math.max(next, 0);
+
+            for (int node = patternAt[state] >= 0 ? state : outputLink[state]; node >= 0; node = outputLink[node]) {
+                int pattern = patternAt[node];
+                found[pattern >>> 6] |= 1L << pattern;
+            }
+        }
+        return found;
+    }
+
+    static boolean contains(long[] found, int pattern) {
+        return (found[pattern >>> 6] & (1L << pattern)) != 0;
+    }
+
+    private int step(int node, char c) {
+        int edge = Arrays.binarySearch(edgeChars[node], c);
+        return edge >= 0 ? edgeTargets[node][edge] : -1;
+    }
+
+    static final class Builder {
+        private final List<Char2IntOpenHashMap> children = new ArrayList<>();
+        private final List<Integer> terminals = new ArrayList<>();
+        private int patternCount;
+
+        Builder() {
+            addNode(); // Root
+        }
+
+        /**
+         * Adds a pattern and returns its id.
+         */
+        int add(String pattern) {
+            int node = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                Char2IntOpenHashMap edges = children.get(node);
+                int next = edges.get(pattern.charAt(i));
+                if (next < 0) {
+                    next = addNode();
+                    edges.put(pattern.charAt(i), next);
+                }
+                node = next;
+            }
+            terminals.set(node, patternCount);
+            return patternCount++;
+        }
+
+        ContainsAutomaton build() {
+            int size = children.size();
+            char[][] edgeChars = new char[size][];
+            int[][] edgeTargets = new int[size][];
+            for (int node = 0; node < size; node++) {
+                Char2IntOpenHashMap edges = children.get(node);
+                char[] chars = edges.keySet().toCharArray();
+                Arrays.sort(chars);
+                int[] targets = new int[chars.length];
+                for (int i = 0; i < chars.length; i++) {
+                    targets[i] = edges.get(chars[i]);
+                }
+                edgeChars[node] = chars;
+                edgeTargets[node] = targets;
+            }
+
+            int[] patternAt = new int[size];
+            for (int node = 0; node < size; node++) {
+                patternAt[node] = terminals.get(node);
+            }
+
+            // Breadth-first, so every node's fail target is finished before its children need it
+            int[] fail = new int[size];
+            int[] outputLink = new int[size];
+            outputLink[0] = -1;
+            IntArrayFIFOQueue queue = new IntArrayFIFOQueue();
+            for (int child : edgeTargets[0]) {
+                fail[child] = 0;
+                outputLink[child] = -1;
+                queue.enqueue(child);
+            }
+            while (!queue.isEmpty()) {
+                int node = queue.dequeueInt();
+                for (int i = 0; i < edgeChars[node].length; i++) {
+                    char c = edgeChars[node][i];
+                    int child = edgeTargets[node][i];
+
+                    int state = fail[node];
+                    int target;
+                    while ((target = find(edgeChars, edgeTargets, state, c)) < 0 && state != 0) {
+                        state = fail[state];
+                    }
+                    fail[child] = Math.max(target, 0);
+
+                    int suffix = fail[child];
+                    outputLink[child] = patternAt[suffix] >= 0 ? suffix : outputLink[suffix];
+                    queue.enqueue(child);
+                }
+            }
+
+            return new ContainsAutomaton(edgeChars, edgeTargets, fail, patternAt, outputLink, patternCount);
+        }
+
+        private static int find(char[][] edgeChars, int[][] edgeTargets, int node, char c) {
+            int edge = Arrays.binarySearch(edgeChars[node], c);
+            return edge >= 0 ? edgeTargets[node][edge] : -1;
+        }
+
+        private int addNode() {
+            Char2IntOpenHashMap edges = new Char2IntOpenHashMap();
+            edges.defaultReturnValue(-1);
+            children.add(edges);
+            terminals.add(-1);
+            return children.size() - 1;
+        }
+    }
+}
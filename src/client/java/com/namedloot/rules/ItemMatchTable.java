@@ -0,0 +1,100 @@
+package com.namedloot.rules;
+
+import com.namedloot.NamedLoot;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.component.ComponentChanges;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.registry.Registries;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The groups of a {@link RuleProgram} that can match the plain stack of each
+ * registered item, precomputed from the default name, tags and rarity.
+ * <p>
+ * For a stack with default components only the count conditions of those
+ * groups are left to check. Stacks whose name or rarity can differ from the
+ * default, renamed ones included, still go through live matching. Built on a
+ * background thread, immutable once built.
+ */
+final class ItemMatchTable {
+    // Items between checks whether the program was replaced while walking the registry
+    private static final int DISCARD_CHECK_INTERVAL = 64;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "NamedLoot Rule Table");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Reference2ObjectOpenHashMap<Item, int[]> groupsByItem;
+
+    private ItemMatchTable(Reference2ObjectOpenHashMap<Item, int[]> groupsByItem) {
+        this.groupsByItem = groupsByItem;
+    }
+
+    /**
+     * Builds the table for {@code program} in the background and hands it to
+     * the program when done.
+     */
+    static void submit(RuleProgram program) {
+        EXECUTOR.execute(() -> {
+            try {
+                ItemMatchTable table = build(program);
+                if (table != null) {
+                    program.setItemTable(table);
+                }
+            } catch (RuntimeException e) {
+                // Live matching still works without the table
+                NamedLoot.LOGGER.warn("Failed to precompute rule matches", e);
+            }
+        });
+    }
+
+    /**
+     * Walks the item registry on the calling thread. Returns {@code null} if
+     * the program was discarded in the meantime.
+     */
+    static ItemMatchTable build(RuleProgram program) {
+        Reference2ObjectOpenHashMap<Item, int[]> groupsByItem = new Reference2ObjectOpenHashMap<>(Registries.ITEM.size());
+        IntArrayList passing = new IntArrayList();
+        int walked = 0;
+        for (Item item : Registries.ITEM) {
+            if (++walked % DISCARD_CHECK_INTERVAL == 0 && program.isDiscarded()) {
+                return null;
+            }
+            if (item == Items.AIR) {
+                continue;
+            }
+
+            passing.clear();
+            program.collectItemMatches(new ItemStack(item), passing);
+            groupsByItem.put(item, passing.toIntArray());
+        }
+        return new ItemMatchTable(groupsByItem);
+    }
+
+    /**
+     * Whether the name and rarity of {@code stack} are the ones of its item's
+     * plain stack, so the table entry applies. Damage is the only change allowed,
+     * it is common on dropped tools and affects neither.
+     */
+    static boolean isApplicable(ItemStack stack) {
+        ComponentChanges changes = stack.getComponentChanges();
+        return changes.isEmpty() || (changes.size() == 1 && changes.get(DataComponentTypes.DAMAGE) != null);
+    }
+
+    /**
+     * Indices of the groups whose conditions, apart from count conditions,
+     * match the plain stack of {@code item}, in rule order; {@code null} for
+     * items not in the registry when the table was built.
+     */
+    int[] get(Item item) {
+        return groupsByItem.get(item);
+    }
+}
@@ -0,0 +1,655 @@
+package com.namedloot.rules;
+
+import com.namedloot.FormatTemplate;
+import com.google.common.primitives.Ints;
+import com.namedloot.config.NamedLootConfig;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.tag.TagKey;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.Rarity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pre-grouped, compiled form of {@link NamedLootConfig#advancedRules}.
+ * <p>
+ * The config stores rule groups as a flat list where a rule with a non-empty
+ * {@code textFormat} starts a new group and the following rules with an empty
+ * format are chained AND conditions. Compiling resolves those boundaries once,
+ * drops groups that are disabled or can never match, and pre-parses every
+ * condition value, so matching an item is just a walk over plain arrays.
+ * All "Contains" values go into one {@link ContainsAutomaton}, which finds
+ * every value in a name with a single pass when a group first needs it.
+ * <p>
+ * Groups with an "Item ID" or "Item Tag" condition are indexed by that item
+ * or tag, so a stack is only tested against the groups that can apply to its
+ * item, plus the groups without such a key. The resulting candidate list is
+ * remembered per item.
+ * <p>
+ * {@link #precomputeItemTable()} additionally works out, off-thread, which
+ * groups can match the plain stack of every registered item. Once that table
+ * is ready, stacks with default components only have their count conditions
+ * checked; renamed or otherwise changed stacks are matched live.
+ * Every format, including the global fallback, is compiled to a
+ * {@link FormatTemplate} at the same time.
+ * <p>
+ * The compiled rules never change, but each {@link Group} keeps pass counts
+ * to pick the order its conditions are checked in. The counts come from
+ * {@link #sample(ItemStack)}, which the label worker runs on a share of the
+ * stacks it labels, cached or not.
+ */
+public final class RuleProgram {
+    private final List<Group> groups;
+    private final ContainsAutomaton containsAutomaton;
+    private final FormatTemplate fallbackTemplate;
+    private final NamedLootConfig source;
+    private final int generation;
+
+    // Group indices by their item or tag key, and the groups without one
+    private final Map<Item, int[]> groupsByItem;
+    private final Map<TagKey<Item>, int[]> groupsByTag;
+    private final int[] unindexedGroups;
+    private final boolean indexed;
+    private final Map<Item, int[]> candidatesByItem = new ConcurrentHashMap<>();
+
+    private volatile ItemMatchTable itemTable;
+    private volatile boolean discarded;
+
+    // Whether the client has received item tags, before that tag ids can only be checked for syntax
+    private static volatile boolean tagsLoaded;
+
+    private RuleProgram(List<Group> groups, ContainsAutomaton containsAutomaton, FormatTemplate fallbackTemplate,
+                        NamedLootConfig source, int generation) {
+        this.groups = groups;
+        this.containsAutomaton = containsAutomaton;
+        this.fallbackTemplate = fallbackTemplate;
+        this.source = source;
+        this.generation = generation;
+
+        Map<Item, IntArrayList> byItem = new Reference2ObjectOpenHashMap<>();
+        Map<TagKey<Item>, IntArrayList> byTag = new HashMap<>();
+        IntArrayList unindexed = new IntArrayList();
+        for (Group group : groups) {
+            Condition key = group.findKey(Operator.ITEM);
+            if (key != null) {
+                byItem.computeIfAbsent(key.item, item -> new IntArrayList()).add(group.getIndex());
+                continue;
+            }
+            key = group.findKey(Operator.TAG);
+            if (key != null) {
+                byTag.computeIfAbsent(key.tag, tag -> new IntArrayList()).add(group.getIndex());
+                continue;
+            }
+            unindexed.add(group.getIndex());
+        }
+
+        this.groupsByItem = new Reference2ObjectOpenHashMap<>();
+        byItem.forEach((item, indices) -> groupsByItem.put(item, indices.toIntArray()));
+        this.groupsByTag = new HashMap<>();
+        byTag.forEach((tag, indices) -> groupsByTag.put(tag, indices.toIntArray()));
+        this.unindexedGroups = unindexed.toIntArray();
+        this.indexed = !groupsByItem.isEmpty() || !groupsByTag.isEmpty();
+    }
+
+    public static RuleProgram compile(NamedLootConfig config) {
+        List<Group> groups = new ArrayList<>();
+        List<NamedLootConfig.AdvancedRule> rules = config.advancedRules;
+
+        // Every distinct Contains value gets one pattern id in the automaton
+        ContainsAutomaton.Builder automaton = new ContainsAutomaton.Builder();
+        Object2IntOpenHashMap<String> patternIds = new Object2IntOpenHashMap<>();
+        patternIds.defaultReturnValue(-1);
+
+        int i = 0;
+        while (i < rules.size()) {
+            NamedLootConfig.AdvancedRule leader = rules.get(i);
+
+            // Find the end of this group: chained conditions have an empty textFormat
+            int nextIndex = i + 1;
+            while (nextIndex < rules.size() && isChained(rules.get(nextIndex))) {
+                nextIndex++;
+            }
+
+            if (leader.ruleEnabled) {
+                Condition[] conditions = new Condition[nextIndex - i];
+                boolean canMatch = true;
+                for (int c = i; c < nextIndex; c++) {
+                    Condition condition = Condition.compile(rules.get(c));
+                    if (condition == null) {
+                        // One condition that never matches makes the whole group unreachable
+                        canMatch = false;
+                        break;
+                    }
+                    conditions[c - i] = condition;
+                }
+
+                if (canMatch) {
+                    for (int c = 0; c < conditions.length; c++) {
+                        Condition condition = conditions[c];
+                        if (condition.operator == Operator.CONTAINS) {
+                            int patternId = patternIds.getInt(condition.lowerValue);
+                            if (patternId < 0) {
+                                patternId = automaton.add(condition.lowerValue);
+                                patternIds.put(condition.lowerValue, patternId);
+                            }
+                            conditions[c] = condition.withPattern(patternId);
+                        }
+                    }
+
+                    FormatTemplate template = FormatTemplate.manual(leader.textFormat, config.overrideItemColors);
+                    groups.add(new Group(groups.size(), template, conditions));
+                }
+            }
+
+            i = nextIndex;
+        }
+
+        // The global format is used when no group matches
+        FormatTemplate fallbackTemplate = config.useManualFormatting
+                ? FormatTemplate.manual(config.textFormat, config.overrideItemColors)
+                : FormatTemplate.automatic(config.textFormat, config);
+
+        ContainsAutomaton containsAutomaton = patternIds.isEmpty() ? ContainsAutomaton.EMPTY : automaton.build();
+        return new RuleProgram(Collections.unmodifiableList(groups), containsAutomaton, fallbackTemplate,
+                config, config.getGeneration());
+    }
+
+    /**
+     * Whether the rule's value makes sense for its condition, i.e. it can match
+     * something. Never throws, so it can run on every keystroke.
+     */
+    public static boolean isValid(NamedLootConfig.AdvancedRule rule) {
+        return Condition.compile(rule) != null;
+    }
+
+    /**
+     * Called when the client receives tags. From then on a tag condition naming
+     * a tag that does not exist is rejected like an unknown item id.
+     */
+    public static void onTagsLoaded() {
+        tagsLoaded = true;
+    }
+
+    private static boolean isChained(NamedLootConfig.AdvancedRule rule) {
+        return rule.textFormat == null || rule.textFormat.isEmpty();
+    }
+
+    /**
+     * Whether this program still reflects the given config, i.e. the config has
+     * not been replaced or edited since it was compiled.
+     */
+    public boolean isCompiledFrom(NamedLootConfig config) {
+        return source == config && generation == config.getGeneration();
+    }
+
+    public FormatTemplate getFallbackTemplate() {
+        return fallbackTemplate;
+    }
+
+    public List<Group> getGroups() {
+        return groups;
+    }
+
+    /**
+     * Starts building the per-item match table in the background. Matching
+     * works as before until it is ready.
+     */
+    public void precomputeItemTable() {
+        if (!groups.isEmpty() && itemTable == null) {
+            ItemMatchTable.submit(this);
+        }
+    }
+
+    /**
+     * Marks this program as replaced, so a table build still running for it stops early.
+     */
+    public void discard() {
+        discarded = true;
+    }
+
+    boolean isDiscarded() {
+        return discarded;
+    }
+
+    void setItemTable(ItemMatchTable itemTable) {
+        this.itemTable = itemTable;
+    }
+
+    /**
+     * Returns the first group whose conditions all match, or {@code null}.
+     * Safe to call from any thread.
+     */
+    public Group match(ItemStack stack) {
+        if (groups.isEmpty()) {
+            return null;
+        }
+
+        ItemMatchTable table = itemTable;
+        if (table != null && ItemMatchTable.isApplicable(stack)) {
+            int[] itemGroups = table.get(stack.getItem());
+            if (itemGroups != null) {
+                // Everything but the count is already known to match
+                for (int groupIndex : itemGroups) {
+                    Group group = groups.get(groupIndex);
+                    if (group.matchesCount(stack.getCount())) {
+                        return group;
+                    }
+                }
+                return null;
+            }
+        }
+        return matchLive(stack, false);
+    }
+
+    /**
+     * Matches the stack condition by condition, bypassing the item table, and
+     * records which conditions passed so the groups can re-plan their order.
+     * <p>
+     * The counters are not synchronized, only one thread may sample a program.
+     * In game that is the label worker.
+     */
+    public void sample(ItemStack stack) {
+        if (!groups.isEmpty()) {
+            matchLive(stack, true);
+        }
+    }
+
+    private Group matchLive(ItemStack stack, boolean record) {
+        Subject subject = new Subject(stack, containsAutomaton);
+        if (!indexed) {
+            for (Group group : groups) {
+                if (group.matches(subject, record)) {
+                    return group;
+                }
+            }
+            return null;
+        }
+
+        // Only the groups that can apply to this item, still in rule order
+        for (int groupIndex : candidatesFor(stack)) {
+            Group group = groups.get(groupIndex);
+            if (group.matches(subject, record)) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    // Number of times any group changed its plan, for the benchmarks
+    int countReplans() {
+        int replans = 0;
+        for (Group group : groups) {
+            replans += group.replans;
+        }
+        return replans;
+    }
+
+    // Adds the groups whose non-count conditions match this plain stack, for ItemMatchTable
+    void collectItemMatches(ItemStack stack, IntArrayList passing) {
+        Subject subject = new Subject(stack, containsAutomaton);
+        if (!indexed) {
+            for (Group group : groups) {
+                if (group.matchesIgnoringCount(subject)) {
+                    passing.add(group.getIndex());
+                }
+            }
+            return;
+        }
+
+        for (int groupIndex : candidatesFor(stack)) {
+            if (groups.get(groupIndex).matchesIgnoringCount(subject)) {
+                passing.add(groupIndex);
+            }
+        }
+    }
+
+    // Groups without an item or tag key, plus the ones keyed by this item or any of its tags
+    private int[] candidatesFor(ItemStack stack) {
+        Item item = stack.getItem();
+        int[] candidates = candidatesByItem.get(item);
+        if (candidates != null) {
+            return candidates;
+        }
+
+        IntArrayList merged = new IntArrayList(unindexedGroups);
+        int[] itemGroups = groupsByItem.get(item);
+        if (itemGroups != null) {
+            merged.addElements(merged.size(), itemGroups);
+        }
+        // Tags only depend on the item, the program is recompiled when tags are reloaded
+        for (Map.Entry<TagKey<Item>, int[]> entry : groupsByTag.entrySet()) {
+            if (stack.isIn(entry.getKey())) {
+                merged.addElements(merged.size(), entry.getValue());
+            }
+        }
+
+        candidates = merged.toIntArray();
+        Arrays.sort(candidates);
+        candidatesByItem.put(item, candidates);
+        return candidates;
+    }
+
+    /**
+     * A rule group: the format plus the conditions that must all match.
+     * <p>
+     * The conditions are checked in the order of the current plan, cheapest
+     * and most likely to fail first, so a failing "Count >" rules out a stack
+     * before an expensive Contains runs. The plan starts from the estimated
+     * costs and is redone every {@link #REPLAN_INTERVAL} sampled checks from
+     * the pass rates seen since. Conditions have no side effects, so the order
+     * never changes whether the group matches.
+     * <p>
+     * Only the sampling thread writes the counters. The plan is replaced as a
+     * whole, so threads that just match always see a complete one.
+     */
+    public static final class Group {
+        // Sampled checks of the group between two plans, counters are halved after each so old results fade
+        static final int REPLAN_INTERVAL = 1024;
+
+        private final int index;
+        private final FormatTemplate template;
+        private final Condition[] conditions;
+
+        // Indices into conditions, in the order they are checked
+        private volatile int[] plan;
+        private final int[] evaluations;
+        private final int[] passes;
+        private int checksSincePlan;
+        private int replans;
+
+        private Group(int index, FormatTemplate template, Condition[] conditions) {
+            this.index = index;
+            this.template = template;
+            this.conditions = conditions;
+            this.evaluations = new int[conditions.length];
+            this.passes = new int[conditions.length];
+            this.plan = planOrder();
+        }
+
+        /** Position of this group among the compiled (enabled) groups. */
+        public int getIndex() {
+            return index;
+        }
+
+        public FormatTemplate getTemplate() {
+            return template;
+        }
+
+        boolean matches(Subject subject, boolean record) {
+            if (conditions.length == 1) {
+                return conditions[0].matches(subject);
+            }
+            if (!record) {
+                for (int conditionIndex : plan) {
+                    if (!conditions[conditionIndex].matches(subject)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            boolean matched = true;
+            for (int conditionIndex : plan) {
+                evaluations[conditionIndex]++;
+                if (!conditions[conditionIndex].matches(subject)) {
+                    matched = false;
+                    break;
+                }
+                passes[conditionIndex]++;
+            }
+
+            if (++checksSincePlan >= REPLAN_INTERVAL) {
+                replan();
+            }
+            return matched;
+        }
+
+        private void replan() {
+            plan = planOrder();
+            for (int i = 0; i < conditions.length; i++) {
+                evaluations[i] >>= 1;
+                passes[i] >>= 1;
+            }
+            checksSincePlan = 0;
+            replans++;
+        }
+
+        // Ascending cost / (1 - pass rate): the expected cost of a condition per stack it rules out
+        private int[] planOrder() {
+            int count = conditions.length;
+            double[] ranks = new double[count];
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                // Smoothed, so unseen conditions start at an even chance and never reach 0 or 1
+                double passRate = (passes[i] + 1.0) / (evaluations[i] + 2.0);
+                ranks[i] = conditions[i].operator.cost / (1.0 - passRate);
+                order[i] = i;
+            }
+            // Stable, conditions that rank the same keep their rule order
+            Arrays.sort(order, (a, b) -> Double.compare(ranks[a], ranks[b]));
+
+            int[] result = new int[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = order[i];
+            }
+            return result;
+        }
+
+        boolean matchesIgnoringCount(Subject subject) {
+            for (int conditionIndex : plan) {
+                Condition condition = conditions[conditionIndex];
+                if (!condition.isCountCondition() && !condition.matches(subject)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean matchesCount(int count) {
+            for (Condition condition : conditions) {
+                if (condition.isCountCondition() && !condition.matchesCount(count)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // First item, else first tag condition, used to index this group
+        private Condition findKey(Operator operator) {
+            for (Condition condition : conditions) {
+                if (condition.operator == operator) {
+                    return condition;
+                }
+            }
+            return null;
+        }
+    }
+
+    enum Operator {
+        // Relative cost of one check. Contains may build the name and run the automaton,
+        // rarity looks at the enchantments, tags look up the item's registry entry
+        CONTAINS(16),
+        COUNT_LESS(1),
+        COUNT_GREATER(1),
+        COUNT_EQUAL(1),
+        ITEM(1),
+        TAG(3),
+        RARITY(2);
+
+        final int cost;
+
+        Operator(int cost) {
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * The stack being matched, with the lowercase name and the Contains hits
+     * computed only if a Contains condition is actually reached.
+     */
+    static final class Subject {
+        final ItemStack stack;
+        private final ContainsAutomaton automaton;
+        private String lowerName;
+        private long[] containsHits;
+
+        Subject(ItemStack stack, ContainsAutomaton automaton) {
+            this.stack = stack;
+            this.automaton = automaton;
+        }
+
+        // Matching is case-insensitive, so the name is lowercased once for every Contains check
+        String getLowerName() {
+            if (lowerName == null) {
+                lowerName = stack.getName().getString().toLowerCase();
+            }
+            return lowerName;
+        }
+
+        boolean contains(Condition condition) {
+            if (condition.patternId < 0 || automaton.isEmpty()) {
+                return getLowerName().contains(condition.lowerValue);
+            }
+            if (containsHits == null) {
+                // One pass finds every Contains value of the program
+                containsHits = automaton.findAll(getLowerName());
+            }
+            return ContainsAutomaton.contains(containsHits, condition.patternId);
+        }
+    }
+
+    static final class Condition {
+        final Operator operator;
+        final String lowerValue;
+        final int countValue;
+        // Id of lowerValue in the program's ContainsAutomaton, -1 if not assigned
+        final int patternId;
+        final Item item;
+        final TagKey<Item> tag;
+        final Rarity rarity;
+
+        private Condition(Operator operator, String lowerValue, int countValue, int patternId,
+                          Item item, TagKey<Item> tag, Rarity rarity) {
+            this.operator = operator;
+            this.lowerValue = lowerValue;
+            this.countValue = countValue;
+            this.patternId = patternId;
+            this.item = item;
+            this.tag = tag;
+            this.rarity = rarity;
+        }
+
+        private static Condition of(Operator operator, String lowerValue, int countValue) {
+            return new Condition(operator, lowerValue, countValue, -1, null, null, null);
+        }
+
+        Condition withPattern(int patternId) {
+            return new Condition(operator, lowerValue, countValue, patternId, item, tag, rarity);
+        }
+
+        /**
+         * Compiles a single rule, or returns {@code null} if it can never match
+         * (empty value, unknown condition, a count that is not a number, or an
+         * unknown item, tag or rarity). Item ids are looked up in the registry and
+         * tags once received, see {@link RuleProgram#onTagsLoaded()}. Invalid values are
+         * rejected without throwing, values being typed are checked on every edit.
+         */
+        static Condition compile(NamedLootConfig.AdvancedRule rule) {
+            // Empty values never match, to prevent a blank rule from matching everything
+            if (rule.value == null || rule.value.isEmpty() || rule.condition == null) {
+                return null;
+            }
+
+            Operator operator = switch (rule.condition) {
+                case "Contains" -> Operator.CONTAINS;
+                case "Count <" -> Operator.COUNT_LESS;
+                case "Count >" -> Operator.COUNT_GREATER;
+                case "Count =" -> Operator.COUNT_EQUAL;
+                case "Item ID" -> Operator.ITEM;
+                case "Item Tag" -> Operator.TAG;
+                case "Rarity" -> Operator.RARITY;
+                default -> null;
+            };
+            if (operator == null) {
+                return null;
+            }
+
+            switch (operator) {
+                case CONTAINS -> {
+                    return of(operator, rule.value.toLowerCase(), 0);
+                }
+                case ITEM -> {
+                    // "diamond" is short for "minecraft:diamond"
+                    Identifier id = Identifier.tryParse(rule.value.trim().toLowerCase(Locale.ROOT));
+                    if (id == null || !Registries.ITEM.containsId(id)) {
+                        return null;
+                    }
+                    return new Condition(operator, null, 0, -1, Registries.ITEM.get(id), null, null);
+                }
+                case TAG -> {
+                    // Accept the "#namespace:path" form used in commands and data packs
+                    String value = rule.value.trim().toLowerCase(Locale.ROOT);
+                    Identifier id = Identifier.tryParse(value.startsWith("#") ? value.substring(1) : value);
+                    if (id == null) {
+                        return null;
+                    }
+                    TagKey<Item> tag = TagKey.of(RegistryKeys.ITEM, id);
+                    // Tags come from the server, until they arrive a tag can't be told unknown
+                    if (tagsLoaded && Registries.ITEM.getOptional(tag).isEmpty()) {
+                        return null;
+                    }
+                    return new Condition(operator, null, 0, -1, null, tag, null);
+                }
+                case RARITY -> {
+                    String value = rule.value.trim();
+                    for (Rarity rarity : Rarity.values()) {
+                        if (rarity.name().equalsIgnoreCase(value)) {
+                            return new Condition(operator, null, 0, -1, null, null, rarity);
+                        }
+                    }
+                    return null;
+                }
+                default -> {
+                    Integer count = Ints.tryParse(rule.value.trim());
+                    return count != null ? of(operator, null, count) : null;
+                }
+            }
+        }
+
+        boolean isCountCondition() {
+            return operator == Operator.COUNT_LESS || operator == Operator.COUNT_GREATER || operator == Operator.COUNT_EQUAL;
+        }
+
+        boolean matchesCount(int count) {
+            return switch (operator) {
+                case COUNT_LESS -> count < countValue;
+                case COUNT_GREATER -> count > countValue;
+                case COUNT_EQUAL -> count == countValue;
+                default -> true;
+            };
+        }
+
+        boolean matches(Subject subject) {
+            return switch (operator) {
+                case CONTAINS -> subject.contains(this);
+                case COUNT_LESS, COUNT_GREATER, COUNT_EQUAL -> matchesCount(subject.stack.getCount());
+                case ITEM -> subject.stack.isOf(item);
+                case TAG -> subject.stack.isIn(tag);
+                case RARITY -> subject.stack.getRarity() == rarity;
+            };
+        }
+    }
+}
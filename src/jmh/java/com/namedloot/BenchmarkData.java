@@ -0,0 +1,110 @@
+package com.namedloot;
+
+import com.namedloot.config.NamedLootConfig;
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.registry.Registries;
+import net.minecraft.text.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Shared setup for the benchmarks: bootstraps the game registries and builds
+ * synthetic rule sets and dropped stack populations. Everything is seeded so
+ * runs against different versions see the same data.
+ */
+public final class BenchmarkData {
+    private static final String[] WORDS = {
+            "diamond", "iron", "gold", "netherite", "sword", "pickaxe", "ingot", "block",
+            "shulker", "book", "potion", "apple", "arrow", "stone", "oak", "wool"
+    };
+    private static final String[] TAGS = {
+            "minecraft:logs", "minecraft:wool", "minecraft:swords", "minecraft:pickaxes", "#c:ores", "#c:ingots"
+    };
+    private static final String[] RARITIES = {"common", "uncommon", "rare", "epic"};
+    private static boolean bootstrapped;
+
+    private BenchmarkData() {
+    }
+
+    public static synchronized void bootstrap() {
+        if (!bootstrapped) {
+            SharedConstants.createGameVersion();
+            Bootstrap.initialize();
+            bootstrapped = true;
+        }
+        if (NamedLootClient.CONFIG == null) {
+            NamedLootClient.CONFIG = new NamedLootConfig();
+        }
+    }
+
+    /**
+     * A config with {@code ruleCount} advanced rules. About a quarter of them
+     * are chained onto the rule before, like multi-condition groups in the UI.
+     */
+    public static NamedLootConfig configWithRules(int ruleCount, long seed) {
+        Random random = new Random(seed);
+        List<Item> items = allItems();
+        NamedLootConfig config = new NamedLootConfig();
+        for (int i = 0; i < ruleCount; i++) {
+            NamedLootConfig.AdvancedRule rule = new NamedLootConfig.AdvancedRule();
+            int kind = random.nextInt(11);
+            if (kind < 5) {
+                rule.condition = "Contains";
+                rule.value = WORDS[random.nextInt(WORDS.length)] + (kind == 0 ? "" : " " + WORDS[random.nextInt(WORDS.length)]);
+            } else if (kind < 8) {
+                rule.condition = kind == 5 ? "Count <" : kind == 6 ? "Count >" : "Count =";
+                rule.value = String.valueOf(1 + random.nextInt(64));
+            } else if (kind == 8) {
+                rule.condition = "Item ID";
+                rule.value = Registries.ITEM.getId(items.get(random.nextInt(items.size()))).toString();
+            } else if (kind == 9) {
+                rule.condition = "Item Tag";
+                rule.value = TAGS[random.nextInt(TAGS.length)];
+            } else {
+                rule.condition = "Rarity";
+                rule.value = RARITIES[random.nextInt(RARITIES.length)];
+            }
+            boolean chained = i > 0 && random.nextInt(4) == 0;
+            rule.textFormat = chained ? "" : "&" + Integer.toHexString(random.nextInt(16)) + "{name} &7x{count}";
+            config.advancedRules.add(rule);
+        }
+        config.markChanged();
+        return config;
+    }
+
+    /**
+     * {@code size} stacks of random items, with random counts and a custom
+     * name on roughly one in ten of them.
+     */
+    public static ItemStack[] stacks(int size, long seed) {
+        Random random = new Random(seed);
+        List<Item> items = allItems();
+
+        ItemStack[] stacks = new ItemStack[size];
+        for (int i = 0; i < size; i++) {
+            ItemStack stack = new ItemStack(items.get(random.nextInt(items.size())), 1 + random.nextInt(64));
+            if (random.nextInt(10) == 0) {
+                stack.set(DataComponentTypes.CUSTOM_NAME, Text.literal(WORDS[random.nextInt(WORDS.length)] + " loot"));
+            }
+            stacks[i] = stack;
+        }
+        return stacks;
+    }
+
+    private static List<Item> allItems() {
+        List<Item> items = new ArrayList<>();
+        for (Item item : Registries.ITEM) {
+            if (item != Items.AIR) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+}
@@ -0,0 +1,80 @@
+package com.namedloot;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.text.MutableText;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning one stack into label text with a precompiled
+ * {@link FormatTemplate}, as the label worker does, and of compiling the
+ * templates, which happens once per config change.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+    private static final int POPULATION = 256; // Power of two, see next()
+
+    @Param({"{name} x{count}", "&6&l{name} &7(&f{count}&7) &r&o&8dropped"})
+    public String format;
+
+    private ItemStack[] stacks;
+    private String[] counts;
+    private FormatTemplate manualTemplate;
+    private FormatTemplate automaticTemplate;
+    private int index;
+
+    @Setup
+    public void setup() {
+        BenchmarkData.bootstrap();
+        stacks = BenchmarkData.stacks(POPULATION, 42L);
+        counts = new String[POPULATION];
+        for (int i = 0; i < POPULATION; i++) {
+            counts[i] = String.valueOf(stacks[i].getCount());
+        }
+        NamedLootClient.CONFIG.textFormat = format;
+        manualTemplate = FormatTemplate.manual(format, NamedLootClient.CONFIG.overrideItemColors);
+        automaticTemplate = FormatTemplate.automatic(format, NamedLootClient.CONFIG);
+    }
+
+    private int next() {
+        return index++ & (POPULATION - 1);
+    }
+
+    @Benchmark
+    public FormatTemplate manualTemplateCompile() {
+        return FormatTemplate.manual(format, NamedLootClient.CONFIG.overrideItemColors);
+    }
+
+    @Benchmark
+    public FormatTemplate automaticTemplateCompile() {
+        return FormatTemplate.automatic(format, NamedLootClient.CONFIG);
+    }
+
+    @Benchmark
+    public MutableText manualTemplateInstantiate() {
+        int i = next();
+        return manualTemplate.instantiate(stacks[i], counts[i]);
+    }
+
+    @Benchmark
+    public MutableText automaticTemplateInstantiate() {
+        int i = next();
+        return automaticTemplate.instantiate(stacks[i], counts[i]);
+    }
+}
@@ -0,0 +1,71 @@
+package com.namedloot;
+
+import com.namedloot.config.NamedLootConfig;
+import com.namedloot.rules.RuleProgram;
+import net.minecraft.item.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick of label building, as done by the {@link LabelWorker}: a batch of
+ * dropped stacks goes through the label cache, rule matching and formatting.
+ * {@code cold} starts every batch from a new config generation, so nothing is
+ * cached; otherwise the batch is served from the cache like a settled scene.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabelPipelineBenchmark {
+    @Param({"10", "100", "1000"})
+    public int ruleCount;
+
+    @Param({"64", "512"})
+    public int stackCount;
+
+    @Param({"true", "false"})
+    public boolean cold;
+
+    private NamedLootConfig config;
+    private RuleProgram program;
+    private ItemStack[] stacks;
+    private LabelWorker worker;
+
+    @Setup
+    public void setup() {
+        BenchmarkData.bootstrap();
+        config = BenchmarkData.configWithRules(ruleCount, 7L);
+        program = RuleProgram.compile(config);
+        stacks = BenchmarkData.stacks(stackCount, 42L);
+        worker = new LabelWorker();
+    }
+
+    @Benchmark
+    public Object buildSnapshot() {
+        if (cold) {
+            // A new generation misses every cached label, the program itself is unaffected
+            config.markChanged();
+        }
+
+        LabelWorker.Batch batch = new LabelWorker.Batch(program, config.getGeneration(),
+                config.enabled, config.showDetails, config.showDetailsOnlyOnHover);
+        for (ItemStack stack : stacks) {
+            // The snapshot only keeps the entity reference, it is never read while building
+            batch.add(null, stack, false);
+        }
+        return worker.build(batch);
+    }
+}
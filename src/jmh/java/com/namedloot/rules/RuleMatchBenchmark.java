@@ -0,0 +1,150 @@
+package com.namedloot.rules;
+
+import com.namedloot.BenchmarkData;
+import com.namedloot.config.NamedLootConfig;
+import net.minecraft.item.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rule matching over synthetic rule sets: single compiled conditions, full
+ * first-match evaluation of all groups, with and without the per-item match
+ * table, before and after sampling has re-planned a badly ordered group, and
+ * compiling the rules from the config.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleMatchBenchmark {
+    private static final int POPULATION = 256; // Power of two, see next()
+
+    @Param({"10", "100", "1000"})
+    public int ruleCount;
+
+    private NamedLootConfig config;
+    private RuleProgram program;
+    private RuleProgram tabledProgram;
+    private RuleProgram unplannedProgram;
+    private RuleProgram replannedProgram;
+    private RuleProgram.Condition[] conditions;
+    private ItemStack[] stacks;
+    private int index;
+
+    @Setup
+    public void setup() {
+        BenchmarkData.bootstrap();
+        config = BenchmarkData.configWithRules(ruleCount, 7L);
+        program = RuleProgram.compile(config);
+        tabledProgram = RuleProgram.compile(config);
+        tabledProgram.setItemTable(ItemMatchTable.build(tabledProgram));
+
+        List<RuleProgram.Condition> compiled = new ArrayList<>();
+        for (NamedLootConfig.AdvancedRule rule : config.advancedRules) {
+            RuleProgram.Condition condition = RuleProgram.Condition.compile(rule);
+            if (condition != null) {
+                compiled.add(condition);
+            }
+        }
+        conditions = compiled.toArray(new RuleProgram.Condition[0]);
+
+        stacks = BenchmarkData.stacks(POPULATION, 42L);
+
+        // Same rules after a group whose estimated order is wrong for these stacks
+        NamedLootConfig misordered = withMisorderedGroup(config);
+        unplannedProgram = RuleProgram.compile(misordered);
+        replannedProgram = RuleProgram.compile(misordered);
+        for (int i = 0; i < RuleProgram.Group.REPLAN_INTERVAL; i++) {
+            replannedProgram.sample(stacks[i & (POPULATION - 1)]);
+        }
+        if (replannedProgram.countReplans() == 0) {
+            throw new IllegalStateException("Sampling did not re-plan the misordered group");
+        }
+    }
+
+    // Every stack has a count above 0 but few are epic, yet by cost alone the count is checked
+    // first. The group comes first, so every sampled stack is checked against it.
+    private static NamedLootConfig withMisorderedGroup(NamedLootConfig config) {
+        NamedLootConfig copy = config.copy();
+
+        NamedLootConfig.AdvancedRule count = new NamedLootConfig.AdvancedRule();
+        count.condition = "Count >";
+        count.value = "0";
+        count.textFormat = "&5{name} &7x{count}";
+
+        NamedLootConfig.AdvancedRule rarity = new NamedLootConfig.AdvancedRule();
+        rarity.condition = "Rarity";
+        rarity.value = "epic";
+        rarity.textFormat = "";
+
+        copy.advancedRules.add(0, count);
+        copy.advancedRules.add(1, rarity);
+        copy.markChanged();
+        return copy;
+    }
+
+    private int next() {
+        return index++ & (POPULATION - 1);
+    }
+
+    // Every condition once against one stack, the worst case of the old per-rule loop
+    @Benchmark
+    public void checkEveryCondition(Blackhole blackhole) {
+        RuleProgram.Subject subject = new RuleProgram.Subject(stacks[next()], ContainsAutomaton.EMPTY);
+        for (RuleProgram.Condition condition : conditions) {
+            blackhole.consume(condition.matches(subject));
+        }
+    }
+
+    @Benchmark
+    public RuleProgram.Group matchGroups() {
+        return program.match(stacks[next()]);
+    }
+
+    @Benchmark
+    public RuleProgram.Group matchGroupsWithItemTable() {
+        return tabledProgram.match(stacks[next()]);
+    }
+
+    @Benchmark
+    public RuleProgram.Group matchGroupsBeforeReplan() {
+        return unplannedProgram.match(stacks[next()]);
+    }
+
+    @Benchmark
+    public RuleProgram.Group matchGroupsAfterReplan() {
+        return replannedProgram.match(stacks[next()]);
+    }
+
+    @Benchmark
+    public void sampleGroups() {
+        replannedProgram.sample(stacks[next()]);
+    }
+
+    @Benchmark
+    public Object buildItemTable() {
+        return ItemMatchTable.build(program);
+    }
+
+    @Benchmark
+    public RuleProgram compileRules() {
+        config.markChanged();
+        return RuleProgram.compile(config);
+    }
+}